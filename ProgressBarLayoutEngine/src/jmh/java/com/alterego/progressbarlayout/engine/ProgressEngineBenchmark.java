@@ -0,0 +1,92 @@
+package com.alterego.progressbarlayout.engine;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the per-frame progress update, the radius computation (linear, and looked up in an
+ * area-linear curve) and retarget storms (a new
+ * target on every frame, as with high frequency progress producers).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProgressEngineBenchmark {
+
+    private static final int FRAME_DURATION_IN_MS = 16;
+
+    @Param({"100", "1000000000"})
+    public long maxProgress;
+
+    private ProgressEngine mEngine;
+    private ProgressRadiusCurve mCurve;
+    private long mNow;
+    private long mTarget;
+
+    @Setup
+    public void setUp() {
+        mEngine = new ProgressEngine(10);
+        mEngine.setMaxProgress(maxProgress);
+        mEngine.setMaxAnimationDuration(1000);
+        mCurve = ProgressRadiusCurve.obtain(ProgressRadiusCurve.AREA_LINEAR, maxProgress, 40.0f, 1100.0f);
+        mNow = 0;
+        mTarget = 0;
+    }
+
+    @Benchmark
+    public double frameUpdate() {
+        mNow += FRAME_DURATION_IN_MS;
+        if (!mEngine.update(mNow)) {
+            mEngine.jumpTo(0);
+            mEngine.animateTo(maxProgress, mNow);
+        }
+        return mEngine.getProgress();
+    }
+
+    @Benchmark
+    public float radius() {
+        mNow += FRAME_DURATION_IN_MS;
+        mEngine.update(mNow);
+        return ProgressEngine.getRadius(mEngine.getProgress(), maxProgress, 40.0f, 1100.0f);
+    }
+
+    @Benchmark
+    public float radiusCurve() {
+        mNow += FRAME_DURATION_IN_MS;
+        mEngine.update(mNow);
+        return mCurve.getRadius(mEngine.getProgress());
+    }
+
+    @Benchmark
+    public long retargetStorm() {
+        mTarget = mTarget >= maxProgress ? 0 : mTarget + 1;
+        mEngine.animateTo(mTarget, mNow);
+        mNow += 1;
+        mEngine.update(mNow);
+        return mEngine.getLabelProgress();
+    }
+}
@@ -0,0 +1,77 @@
+package com.alterego.progressbarlayout.engine;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the label text formatting: String.format, as done by the default formatter, the
+ * allocation-free {@link com.alterego.progressbarlayout.engine.ProgressLabelFormat}, and a typical
+ * custom formatter showing a percentage of the maximum.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProgressLabelFormatBenchmark {
+
+    private static final long MAX_PROGRESS = 100;
+
+    @Param({"%d%% done"})
+    public String progressString;
+
+    private ProgressLabelFormat mLabelFormat;
+    private StringBuilder mCustomLabel;
+    private long mProgress;
+
+    @Setup
+    public void setUp() {
+        mLabelFormat = ProgressLabelFormat.compile(progressString);
+        mCustomLabel = new StringBuilder();
+        mProgress = 0;
+    }
+
+    private long nextProgress() {
+        mProgress = mProgress >= MAX_PROGRESS ? 0 : mProgress + 1;
+        return mProgress;
+    }
+
+    @Benchmark
+    public String defaultFormatter() {
+        return String.format(progressString, nextProgress());
+    }
+
+    @Benchmark
+    public int labelFormat() {
+        return mLabelFormat.format(nextProgress());
+    }
+
+    @Benchmark
+    public int customFormatter() {
+        mCustomLabel.setLength(0);
+        mCustomLabel.append(nextProgress() * 100 / MAX_PROGRESS).append('%');
+        return mCustomLabel.length();
+    }
+}
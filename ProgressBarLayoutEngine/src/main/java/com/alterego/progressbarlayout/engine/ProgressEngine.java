@@ -0,0 +1,406 @@
+package com.alterego.progressbarlayout.engine;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+/**
+ * Progress state and animation math of the progress bar, without any Android dependency.
+ * <p/>
+ * The engine keeps the target progress, the maximum and the animated position. An animation is
+ * planned once when the target changes ({@link #animateTo(long, long)}): it starts from the current
+ * position, takes stepDuration per progress unit (within the maximum duration and speed, if set), and
+ * every {@link #update(long)} computes the position from the time elapsed since its start. The label
+ * progress is the whole progress value the animation has reached.
+ * <p/>
+ * A {@link ProgressTimeline} is animated the same way: the times of all its segments are planned
+ * once when it starts ({@link #animateTimeline(ProgressTimeline, long)}), and every update finds the
+ * segment the elapsed time falls in.
+ * <p/>
+ * The engine is not thread safe, it's meant to be confined to the thread running the animation.
+ */
+public class ProgressEngine {
+
+    private long mMaxProgress = 100;
+    private long mTargetProgress = 0;
+    private double mProgress = 0;
+    private long mLabelProgress = 0;
+
+    private int mStepDuration;
+    private int mMaxAnimationDuration = 0;
+    private float mMaxProgressSpeed = 0;
+
+    private double mStartProgress;
+    private long mStartTime;
+    private long mDuration;
+    private boolean mRunning = false;
+    private boolean mPaused = false;
+    private long mPauseTime;
+
+    //planned timeline, the targets and end times (from the start) of its segments
+    private int mSegmentCount = 0;
+    private int mCompletedSegments = 0;
+    private long[] mSegmentTargets = new long[0];
+    private long[] mSegmentEnds = new long[0];
+
+    /**
+     * @param stepDuration duration in ms of the animation of a single progress unit
+     */
+    public ProgressEngine(int stepDuration) {
+        mStepDuration = stepDuration;
+    }
+
+    /**
+     * @param stepDuration duration in ms of the animation of a single progress unit
+     */
+    public void setStepDuration(int stepDuration) {
+        mStepDuration = stepDuration;
+    }
+
+    public int getStepDuration() {
+        return mStepDuration;
+    }
+
+    /**
+     * @param durationInMs maximum duration of an animation, 0 for no maximum
+     */
+    public void setMaxAnimationDuration(int durationInMs) {
+        mMaxAnimationDuration = durationInMs;
+    }
+
+    /**
+     * @param unitsPerSecond maximum animation speed in progress units per second, 0 for no cap. The
+     *                       cap wins over the maximum animation duration.
+     */
+    public void setMaxProgressSpeed(float unitsPerSecond) {
+        mMaxProgressSpeed = unitsPerSecond;
+    }
+
+    public long getMaxProgress() {
+        return mMaxProgress;
+    }
+
+    /**
+     * Sets the maximum progress. Doesn't change the target or the position.
+     *
+     * @param maxProgress maximum progress
+     */
+    public void setMaxProgress(long maxProgress) {
+        mMaxProgress = maxProgress;
+    }
+
+    /**
+     * @return the progress the engine is animating (or has animated) to
+     */
+    public long getTargetProgress() {
+        return mTargetProgress;
+    }
+
+    /**
+     * @return the current, possibly fractional, animated progress
+     */
+    public double getProgress() {
+        return mProgress;
+    }
+
+    /**
+     * @return the whole progress value reached by the animation
+     */
+    public long getLabelProgress() {
+        return mLabelProgress;
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Clamps the progress to the maximum.
+     */
+    public long clamp(long progress) {
+        return progress > mMaxProgress ? mMaxProgress : progress;
+    }
+
+    /**
+     * Starts animating from the current position to the target.
+     *
+     * @param targetProgress target progress, clamped to the maximum
+     * @param now            current time in ms
+     */
+    public void animateTo(long targetProgress, long now) {
+        mSegmentCount = 0;
+        mTargetProgress = clamp(targetProgress);
+        mStartProgress = mProgress;
+        mStartTime = now;
+        if (mPaused)
+            mPauseTime = now;
+        mDuration = getAnimationDuration(Math.abs(mTargetProgress - mStartProgress));
+        mRunning = true;
+    }
+
+    /**
+     * Starts animating from the current position to the target, like {@link #animateTo(long, long)},
+     * but finishing within the given time. Used to follow progress sampled at a regular interval,
+     * where each animation has to end before the next sample.
+     *
+     * @param targetProgress target progress, clamped to the maximum
+     * @param now            current time in ms
+     * @param maxDuration    maximum duration of the animation in ms
+     */
+    public void animateTo(long targetProgress, long now, long maxDuration) {
+        animateTo(targetProgress, now);
+        mDuration = Math.min(mDuration, Math.max(0, maxDuration));
+    }
+
+    /**
+     * Starts animating the segments of the timeline one after the other, from the current position.
+     * The segments take the time they set, the maximum duration and speed don't apply to them. An
+     * empty timeline is ignored.
+     *
+     * @param timeline timeline, targets are clamped to the maximum
+     * @param now      current time in ms
+     */
+    public void animateTimeline(ProgressTimeline timeline, long now) {
+        int count = timeline.getSegmentCount();
+        if (count == 0)
+            return;
+
+        if (mSegmentTargets.length < count) {
+            mSegmentTargets = new long[count];
+            mSegmentEnds = new long[count];
+        }
+
+        double from = mProgress;
+        long end = 0;
+        for (int i = 0; i < count; i++) {
+            long target = clamp(timeline.getTargetProgress(i));
+            end += timeline.getDuration(i, Math.abs(target - from));
+            mSegmentTargets[i] = target;
+            mSegmentEnds[i] = end;
+            from = target;
+        }
+
+        mSegmentCount = count;
+        mCompletedSegments = 0;
+        mTargetProgress = mSegmentTargets[count - 1];
+        mStartProgress = mProgress;
+        mStartTime = now;
+        if (mPaused)
+            mPauseTime = now;
+        mDuration = end;
+        mRunning = true;
+    }
+
+    /**
+     * @return number of segments of the timeline being (or last) animated, 0 if the last animation
+     * wasn't a timeline
+     */
+    public int getSegmentCount() {
+        return mSegmentCount;
+    }
+
+    /**
+     * @return number of segments of the timeline whose target has been reached
+     */
+    public int getCompletedSegments() {
+        return mCompletedSegments;
+    }
+
+    /**
+     * Moves to the progress immediately, stopping any running animation.
+     *
+     * @param progress progress, clamped to the maximum
+     */
+    public void jumpTo(long progress) {
+        mSegmentCount = 0;
+        mTargetProgress = clamp(progress);
+        mProgress = mTargetProgress;
+        mLabelProgress = mTargetProgress;
+        mRunning = false;
+    }
+
+    /**
+     * Moves the animated position without animating, stopping any running animation, to restore a
+     * position reached earlier. The target is left as it is, {@link #animateTo(long, long)} continues
+     * from the position.
+     *
+     * @param progress      possibly fractional progress, clamped to the maximum
+     * @param labelProgress whole progress value shown for the position
+     */
+    public void setPosition(double progress, long labelProgress) {
+        mProgress = Math.min(progress, mMaxProgress);
+        mLabelProgress = clamp(labelProgress);
+        mRunning = false;
+    }
+
+    /**
+     * Moves to the end of the running animation immediately, completing all its segments.
+     */
+    public void finish() {
+        if (mRunning) {
+            mProgress = mTargetProgress;
+            mLabelProgress = mTargetProgress;
+            mCompletedSegments = mSegmentCount;
+            mRunning = false;
+        }
+    }
+
+    /**
+     * Stops the running animation where it is.
+     */
+    public void cancel() {
+        mRunning = false;
+    }
+
+    /**
+     * Freezes the animation time: until {@link #resume(long)} the animation doesn't advance, and
+     * animations started in the meantime start counting from the resume.
+     *
+     * @param now current time in ms
+     */
+    public void pause(long now) {
+        if (!mPaused) {
+            mPaused = true;
+            mPauseTime = now;
+        }
+    }
+
+    /**
+     * Lets the animation time run again after {@link #pause(long)}, continuing the animation from
+     * where it was paused.
+     *
+     * @param now current time in ms
+     */
+    public void resume(long now) {
+        if (mPaused) {
+            mPaused = false;
+            mStartTime += now - mPauseTime;
+        }
+    }
+
+    public boolean isPaused() {
+        return mPaused;
+    }
+
+    /**
+     * Advances the running animation to the given time.
+     *
+     * @param now current time in ms
+     * @return true if the animation is still running after this update
+     */
+    public boolean update(long now) {
+        if (!mRunning)
+            return false;
+        if (mPaused)
+            now = mPauseTime;
+
+        long elapsed = Math.max(0, now - mStartTime);
+        if (elapsed >= mDuration) {
+            mProgress = mTargetProgress;
+            mLabelProgress = mTargetProgress;
+            mCompletedSegments = mSegmentCount;
+            mRunning = false;
+        } else if (mSegmentCount > 0) {
+            while (elapsed >= mSegmentEnds[mCompletedSegments])
+                mCompletedSegments++;
+
+            int segment = mCompletedSegments;
+            long segmentStart = segment > 0 ? mSegmentEnds[segment - 1] : 0;
+            double segmentFrom = segment > 0 ? mSegmentTargets[segment - 1] : mStartProgress;
+            moveTo(segmentFrom, mSegmentTargets[segment], elapsed - segmentStart, mSegmentEnds[segment] - segmentStart);
+        } else {
+            moveTo(mStartProgress, mTargetProgress, elapsed, mDuration);
+        }
+        return mRunning;
+    }
+
+    private void moveTo(double from, long to, long elapsed, long duration) {
+        mProgress = interpolate(from, to, elapsed, duration);
+        mLabelProgress = getLabelProgress(from, to, mProgress);
+    }
+
+    /**
+     * @return duration in ms of the animation covering the progress distance
+     */
+    public long getAnimationDuration(double distance) {
+        return getAnimationDuration(distance, mStepDuration, mMaxAnimationDuration, mMaxProgressSpeed);
+    }
+
+    /**
+     * Computes the duration of an animation: stepDuration per progress unit, within the maximum
+     * duration, slowed down to the maximum speed. Shared by everything animating progress, so the
+     * rules are the same everywhere.
+     *
+     * @param distance             progress distance covered by the animation
+     * @param stepDuration         duration in ms of the animation of a single progress unit
+     * @param maxAnimationDuration maximum duration of an animation, 0 for no maximum
+     * @param maxProgressSpeed     maximum speed in progress units per second, 0 for no cap
+     * @return duration in ms
+     */
+    public static long getAnimationDuration(double distance, int stepDuration, int maxAnimationDuration,
+                                            float maxProgressSpeed) {
+        double duration = distance * stepDuration;
+        if (maxAnimationDuration > 0)
+            duration = Math.min(duration, maxAnimationDuration);
+        if (maxProgressSpeed > 0)
+            duration = Math.max(duration, distance * 1000 / maxProgressSpeed);
+        return (long) duration;
+    }
+
+    /**
+     * Computes the position of an animation from the time elapsed since its start, so it never
+     * drifts however many frames there are.
+     *
+     * @param from     position the animation started from
+     * @param to       target of the animation
+     * @param elapsed  time elapsed since the start in ms, less than the duration
+     * @param duration duration of the animation in ms
+     * @return possibly fractional progress
+     */
+    public static double interpolate(double from, long to, long elapsed, long duration) {
+        return from + (to - from) * elapsed / duration;
+    }
+
+    /**
+     * Computes the whole progress value an animation has reached: the label never shows a value the
+     * animation hasn't got to yet, whichever direction it goes.
+     *
+     * @param from     position the animation started from
+     * @param to       target of the animation
+     * @param progress current position of the animation
+     * @return label progress
+     */
+    public static long getLabelProgress(double from, long to, double progress) {
+        if (from <= to)
+            return (long) Math.floor(progress);
+        return (long) Math.ceil(progress);
+    }
+
+    /**
+     * Computes the radius for the progress directly from the progress, so it never drifts however
+     * many updates there are.
+     *
+     * @param progress        progress
+     * @param maxProgress     maximum progress
+     * @param beginningRadius radius for progress 0
+     * @param endRadius       radius for the maximum progress
+     * @return radius
+     */
+    public static float getRadius(double progress, long maxProgress, float beginningRadius, float endRadius) {
+        if (maxProgress <= 0)
+            return beginningRadius;
+        return (float) (beginningRadius + (endRadius - beginningRadius) * (progress / maxProgress));
+    }
+}
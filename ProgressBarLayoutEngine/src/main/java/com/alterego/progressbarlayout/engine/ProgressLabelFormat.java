@@ -0,0 +1,161 @@
+package com.alterego.progressbarlayout.engine;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Formats progress labels for simple templates (literal text, "%%" and a single "%d") into a
+ * reusable char buffer, giving the same result as {@link String#format(String, Object...)} without
+ * allocating anything per call. The labels are drawn on a single line, so templates with line
+ * breaks are left to the layout path.
+ */
+public class ProgressLabelFormat {
+
+    private static final int MAX_DIGITS = 20;
+
+    private final char[] mPrefix;
+    private final char[] mSuffix;
+    private final char[] mBuffer;
+    private final char mZeroDigit;
+    private final char mMinusSign;
+    private final String mGlyphs;
+    private int mLength = 0;
+
+    private ProgressLabelFormat(char[] prefix, char[] suffix) {
+        mPrefix = prefix;
+        mSuffix = suffix;
+        mBuffer = new char[prefix.length + MAX_DIGITS + suffix.length];
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance();
+        mZeroDigit = symbols.getZeroDigit();
+        mMinusSign = symbols.getMinusSign();
+        System.arraycopy(mPrefix, 0, mBuffer, 0, mPrefix.length);
+
+        StringBuilder glyphs = new StringBuilder();
+        for (int i = 0; i < 10; i++)
+            appendGlyph(glyphs, (char) (mZeroDigit + i));
+        appendGlyph(glyphs, mMinusSign);
+        for (char c : mPrefix)
+            appendGlyph(glyphs, c);
+        for (char c : mSuffix)
+            appendGlyph(glyphs, c);
+        mGlyphs = glyphs.toString();
+    }
+
+    private static void appendGlyph(StringBuilder glyphs, char c) {
+        if (glyphs.indexOf(String.valueOf(c)) < 0)
+            glyphs.append(c);
+    }
+
+    /**
+     * Compiles the progress string template.
+     *
+     * @param progressString progress bar string, as declared in the layout (textProgressString parameter)
+     * @return the compiled format, or null if the template uses anything but literal text, "%%"
+     * and a single "%d", or breaks lines ("%n" or a line break in the text)
+     */
+    public static ProgressLabelFormat compile(String progressString) {
+        if (progressString == null)
+            return null;
+
+        StringBuilder prefix = new StringBuilder();
+        StringBuilder suffix = new StringBuilder();
+        StringBuilder current = prefix;
+        int length = progressString.length();
+        for (int i = 0; i < length; i++) {
+            char c = progressString.charAt(i);
+            if (c == '\n' || c == '\r')
+                return null;
+            if (c != '%') {
+                current.append(c);
+                continue;
+            }
+            if (i + 1 >= length)
+                return null;
+            char conversion = progressString.charAt(++i);
+            if (conversion == '%') {
+                current.append('%');
+            } else if (conversion == 'd' && current == prefix) {
+                current = suffix;
+            } else {
+                return null;
+            }
+        }
+
+        if (current == prefix)
+            return null;
+
+        return new ProgressLabelFormat(toChars(prefix), toChars(suffix));
+    }
+
+    private static char[] toChars(StringBuilder builder) {
+        char[] chars = new char[builder.length()];
+        builder.getChars(0, builder.length(), chars, 0);
+        return chars;
+    }
+
+    /**
+     * Formats the progress into the buffer returned by {@link #getChars()}.
+     *
+     * @param progress progress
+     * @return length of the formatted label
+     */
+    public int format(long progress) {
+        int position = mPrefix.length;
+        if (progress < 0)
+            mBuffer[position++] = mMinusSign;
+
+        int digitsStart = position;
+        //write the digits backwards, working on negative values so that Long.MIN_VALUE fits
+        long value = progress < 0 ? progress : -progress;
+        do {
+            mBuffer[position++] = (char) (mZeroDigit - (int) (value % 10));
+            value /= 10;
+        } while (value != 0);
+
+        for (int i = digitsStart, j = position - 1; i < j; i++, j--) {
+            char c = mBuffer[i];
+            mBuffer[i] = mBuffer[j];
+            mBuffer[j] = c;
+        }
+
+        System.arraycopy(mSuffix, 0, mBuffer, position, mSuffix.length);
+        mLength = position + mSuffix.length;
+        return mLength;
+    }
+
+    /**
+     * @return buffer holding the last formatted label; only the first {@link #length()} chars are valid
+     */
+    public char[] getChars() {
+        return mBuffer;
+    }
+
+    /**
+     * @return all the distinct characters a formatted label can contain
+     */
+    public String getGlyphs() {
+        return mGlyphs;
+    }
+
+    /**
+     * @return length of the last formatted label
+     */
+    public int length() {
+        return mLength;
+    }
+}
@@ -0,0 +1,174 @@
+package com.alterego.progressbarlayout.engine;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Radius of the progress circle as a function of the progress, shaped by an
+ * {@link ProgressRadiusCurve.Interpolator} and precomputed into a lookup table, so that an eased
+ * radius costs a table lookup per frame instead of the easing math.
+ * <p/>
+ * The table has one entry per progress unit, up to {@link #MAX_TABLE_SIZE} entries; positions in
+ * between entries (fractional progress, or larger maximums) are interpolated linearly between the
+ * two nearest ones. Curves are shared: {@link #obtain(Interpolator, long, float, float)} returns the
+ * same curve for the same interpolator, maximum and radii, whichever view asks for it.
+ */
+public class ProgressRadiusCurve {
+
+    /**
+     * Maximum number of steps of a lookup table.
+     */
+    public static final int MAX_TABLE_SIZE = 1024;
+
+    private static final int MAX_SHARED_CURVES = 16;
+
+    /**
+     * Maps the fraction of the maximum progress reached to the fraction of the radius growth.
+     */
+    public interface Interpolator {
+        /**
+         * @param fraction fraction of the maximum progress, between 0 and 1
+         * @return fraction of the growth from the beginning to the end radius, 0 at 0 and 1 at 1
+         */
+        float getInterpolation(float fraction);
+    }
+
+    /**
+     * The radius grows at the same rate as the progress.
+     */
+    public static final Interpolator LINEAR = new Interpolator() {
+        @Override
+        public float getInterpolation(float fraction) {
+            return fraction;
+        }
+    };
+
+    /**
+     * The area of the circle grows at the same rate as the progress, so the revealed surface is
+     * proportional to it.
+     */
+    public static final Interpolator AREA_LINEAR = new Interpolator() {
+        @Override
+        public float getInterpolation(float fraction) {
+            return (float) Math.sqrt(fraction);
+        }
+    };
+
+    /**
+     * The radius grows fast at the beginning and slows down towards the maximum.
+     */
+    public static final Interpolator EASE_OUT = new Interpolator() {
+        @Override
+        public float getInterpolation(float fraction) {
+            return 1.0f - (1.0f - fraction) * (1.0f - fraction);
+        }
+    };
+
+    private static final LinkedHashMap<Key, ProgressRadiusCurve> sCurves =
+            new LinkedHashMap<Key, ProgressRadiusCurve>(MAX_SHARED_CURVES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, ProgressRadiusCurve> eldest) {
+                    return size() > MAX_SHARED_CURVES;
+                }
+            };
+
+    private final float[] mRadii;
+    private final int mSteps;
+    private final double mStepsPerUnit;
+
+    /**
+     * Returns the curve for the parameters, building its table only if no other caller has asked
+     * for the same curve recently.
+     *
+     * @param interpolator    interpolator, curves of custom interpolators are shared by instance
+     * @param maxProgress     maximum progress
+     * @param beginningRadius radius for progress 0
+     * @param endRadius       radius for the maximum progress
+     * @return curve
+     */
+    public static ProgressRadiusCurve obtain(Interpolator interpolator, long maxProgress, float beginningRadius, float endRadius) {
+        Key key = new Key(interpolator, maxProgress, beginningRadius, endRadius);
+        synchronized (sCurves) {
+            ProgressRadiusCurve curve = sCurves.get(key);
+            if (curve == null) {
+                curve = new ProgressRadiusCurve(interpolator, maxProgress, beginningRadius, endRadius);
+                sCurves.put(key, curve);
+            }
+            return curve;
+        }
+    }
+
+    private ProgressRadiusCurve(Interpolator interpolator, long maxProgress, float beginningRadius, float endRadius) {
+        mSteps = (int) Math.max(1, Math.min(maxProgress, MAX_TABLE_SIZE));
+        mStepsPerUnit = maxProgress > 0 ? (double) mSteps / maxProgress : 0;
+        mRadii = new float[mSteps + 1];
+        for (int i = 0; i <= mSteps; i++)
+            mRadii[i] = beginningRadius + (endRadius - beginningRadius) * interpolator.getInterpolation((float) i / mSteps);
+    }
+
+    /**
+     * @param progress progress, possibly fractional
+     * @return radius for the progress
+     */
+    public float getRadius(double progress) {
+        double position = progress * mStepsPerUnit;
+        if (position <= 0)
+            return mRadii[0];
+        if (position >= mSteps)
+            return mRadii[mSteps];
+
+        int index = (int) position;
+        float radius = mRadii[index];
+        double fraction = position - index;
+        if (fraction == 0)
+            return radius;
+        return (float) (radius + (mRadii[index + 1] - radius) * fraction);
+    }
+
+    private static class Key {
+        final Interpolator interpolator;
+        final long maxProgress;
+        final int beginningRadiusBits;
+        final int endRadiusBits;
+
+        Key(Interpolator interpolator, long maxProgress, float beginningRadius, float endRadius) {
+            this.interpolator = interpolator;
+            this.maxProgress = maxProgress;
+            this.beginningRadiusBits = Float.floatToIntBits(beginningRadius);
+            this.endRadiusBits = Float.floatToIntBits(endRadius);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return interpolator == other.interpolator && maxProgress == other.maxProgress
+                    && beginningRadiusBits == other.beginningRadiusBits && endRadiusBits == other.endRadiusBits;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(interpolator);
+            result = 31 * result + (int) (maxProgress ^ (maxProgress >>> 32));
+            result = 31 * result + beginningRadiusBits;
+            return 31 * result + endRadiusBits;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.alterego.progressbarlayout.engine;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import java.util.ArrayList;
+
+/**
+ * Sequence of progress targets animated one after the other as a single animation, see
+ * {@link ProgressEngine#animateTimeline(ProgressTimeline, long)}. Each segment goes from the target
+ * of the previous one (or from the current position, for the first) to its own target, in a given
+ * time or at a given speed, and can carry its own label template.
+ * <p/>
+ * The whole timeline is planned when the animation starts; don't change a timeline while it's being
+ * animated.
+ */
+public class ProgressTimeline {
+
+    private final ArrayList<Segment> mSegments = new ArrayList<Segment>();
+
+    /**
+     * Adds a segment reaching the target in the given time.
+     *
+     * @param targetProgress target progress of the segment
+     * @param durationInMs   duration of the segment
+     * @return this timeline
+     */
+    public ProgressTimeline addSegment(long targetProgress, long durationInMs) {
+        return addSegment(targetProgress, durationInMs, null);
+    }
+
+    /**
+     * Adds a segment reaching the target in the given time.
+     *
+     * @param targetProgress target progress of the segment
+     * @param durationInMs   duration of the segment
+     * @param progressString label template used during the segment, as the textProgressString
+     *                       parameter, or null for the owner's default template
+     * @return this timeline
+     */
+    public ProgressTimeline addSegment(long targetProgress, long durationInMs, String progressString) {
+        mSegments.add(new Segment(targetProgress, Math.max(0, durationInMs), 0, progressString));
+        return this;
+    }
+
+    /**
+     * Adds a segment reaching the target at the given speed.
+     *
+     * @param targetProgress target progress of the segment
+     * @param unitsPerSecond speed of the segment in progress units per second
+     * @return this timeline
+     */
+    public ProgressTimeline addSegmentAtSpeed(long targetProgress, float unitsPerSecond) {
+        return addSegmentAtSpeed(targetProgress, unitsPerSecond, null);
+    }
+
+    /**
+     * Adds a segment reaching the target at the given speed.
+     *
+     * @param targetProgress target progress of the segment
+     * @param unitsPerSecond speed of the segment in progress units per second
+     * @param progressString label template used during the segment, as the textProgressString
+     *                       parameter, or null for the owner's default template
+     * @return this timeline
+     */
+    public ProgressTimeline addSegmentAtSpeed(long targetProgress, float unitsPerSecond, String progressString) {
+        mSegments.add(new Segment(targetProgress, -1, unitsPerSecond, progressString));
+        return this;
+    }
+
+    public void clear() {
+        mSegments.clear();
+    }
+
+    public int getSegmentCount() {
+        return mSegments.size();
+    }
+
+    public long getTargetProgress(int segment) {
+        return mSegments.get(segment).targetProgress;
+    }
+
+    /**
+     * @return label template of the segment, null for the owner's default template
+     */
+    public String getProgressString(int segment) {
+        return mSegments.get(segment).progressString;
+    }
+
+    /**
+     * @param segment  segment
+     * @param distance progress distance covered by the segment
+     * @return duration in ms of the segment
+     */
+    public long getDuration(int segment, double distance) {
+        Segment s = mSegments.get(segment);
+        if (s.durationInMs >= 0)
+            return s.durationInMs;
+        if (s.unitsPerSecond <= 0)
+            return 0;
+        return (long) (distance * 1000 / s.unitsPerSecond);
+    }
+
+    private static class Segment {
+        final long targetProgress;
+        final long durationInMs;
+        final float unitsPerSecond;
+        final String progressString;
+
+        Segment(long targetProgress, long durationInMs, float unitsPerSecond, String progressString) {
+            this.targetProgress = targetProgress;
+            this.durationInMs = durationInMs;
+            this.unitsPerSecond = unitsPerSecond;
+            this.progressString = progressString;
+        }
+    }
+}
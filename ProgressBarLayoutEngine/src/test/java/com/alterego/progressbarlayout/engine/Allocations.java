@@ -0,0 +1,56 @@
+package com.alterego.progressbarlayout.engine;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the memory allocated by the current thread, through the HotSpot extension of the
+ * thread MX bean.
+ */
+final class Allocations {
+
+    private static final com.sun.management.ThreadMXBean sThreadBean = threadBean();
+
+    private Allocations() {
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        if (!threadBean.isThreadAllocatedMemorySupported())
+            return null;
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        return threadBean;
+    }
+
+    /**
+     * @return true if the allocations can be measured on this JVM
+     */
+    static boolean isSupported() {
+        return sThreadBean != null;
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far
+     */
+    static long allocatedBytes() {
+        return sThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,196 @@
+package com.alterego.progressbarlayout.engine;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProgressEngineTest {
+
+    private static final int STEP_DURATION_IN_MS = 10;
+    private static final int FRAME_DURATION_IN_MS = 16;
+    private static final float BEGINNING_RADIUS = 40.0f;
+    private static final float END_RADIUS = 1100.0f;
+
+    private ProgressEngine mEngine;
+    private long mNow;
+
+    @Before
+    public void setUp() {
+        mEngine = new ProgressEngine(STEP_DURATION_IN_MS);
+        mNow = 1000;
+    }
+
+    private float radius() {
+        return ProgressEngine.getRadius(mEngine.getProgress(), mEngine.getMaxProgress(), BEGINNING_RADIUS, END_RADIUS);
+    }
+
+    private void runToEnd() {
+        while (mEngine.update(mNow))
+            mNow += FRAME_DURATION_IN_MS;
+    }
+
+    @Test
+    public void millionsOfIncrementalUpdatesDontDrift() {
+        long maxProgress = 3000000;
+        mEngine.setMaxProgress(maxProgress);
+
+        //each update retargets the running animation halfway, one unit behind the target
+        for (long progress = 2; progress <= maxProgress; progress++) {
+            mEngine.animateTo(progress, mNow);
+            mNow += STEP_DURATION_IN_MS;
+            assertTrue(mEngine.update(mNow));
+            if (mEngine.getProgress() != progress - 1)
+                assertEquals("progress after step " + progress, progress - 1, mEngine.getProgress(), 0);
+            if (mEngine.getLabelProgress() != progress - 1)
+                assertEquals("label after step " + progress, progress - 1, mEngine.getLabelProgress());
+        }
+
+        runToEnd();
+        assertEquals(maxProgress, mEngine.getProgress(), 0);
+        assertEquals(maxProgress, mEngine.getLabelProgress());
+        assertEquals(END_RADIUS, radius(), 0);
+    }
+
+    @Test
+    public void millionsOfRetargetedFramesDontDrift() {
+        long maxProgress = 1000000000L;
+        mEngine.setMaxProgress(maxProgress);
+        mEngine.setMaxAnimationDuration(1000);
+
+        //a new target on every frame, as a fast producer would set it, each one cut short
+        long target = 0;
+        for (int frame = 0; frame < 2000000; frame++) {
+            target += 400;
+            mEngine.animateTo(target, mNow);
+            mNow += FRAME_DURATION_IN_MS;
+            mEngine.update(mNow);
+
+            double progress = mEngine.getProgress();
+            if (progress < 0 || progress > target)
+                fail("progress " + progress + " out of [0, " + target + "] at frame " + frame);
+        }
+
+        runToEnd();
+        assertEquals(target, mEngine.getProgress(), 0);
+        assertEquals(target, mEngine.getLabelProgress());
+        assertEquals(ProgressEngine.getRadius(target, maxProgress, BEGINNING_RADIUS, END_RADIUS), radius(), 0);
+    }
+
+    @Test
+    public void longAnimationFollowsTheClosedForm() {
+        long maxProgress = 1000000000L;
+        mEngine.setMaxProgress(maxProgress);
+        mEngine.setMaxAnimationDuration(50000000);
+
+        long start = mNow;
+        mEngine.animateTo(maxProgress, start);
+        long duration = mEngine.getAnimationDuration(maxProgress);
+        while (mEngine.update(mNow)) {
+            double expected = (double) maxProgress * (mNow - start) / duration;
+            if (mEngine.getProgress() != expected)
+                assertEquals("progress at " + (mNow - start) + " ms", expected, mEngine.getProgress(), 0);
+            mNow += FRAME_DURATION_IN_MS;
+        }
+
+        assertEquals(maxProgress, mEngine.getLabelProgress());
+        assertEquals(END_RADIUS, radius(), 0);
+    }
+
+    @Test
+    public void sampledProgressKeepsUpWithTheSource() {
+        long maxProgress = 64 * 1024;
+        mEngine.setMaxProgress(maxProgress);
+
+        //a read advancing 1 KB per frame, each sample animated within the frame
+        for (long read = 1024; read <= maxProgress; read += 1024) {
+            mEngine.animateTo(read, mNow, FRAME_DURATION_IN_MS);
+            mNow += FRAME_DURATION_IN_MS;
+            assertFalse(mEngine.update(mNow));
+            assertEquals(read, mEngine.getLabelProgress());
+        }
+        assertEquals(END_RADIUS, radius(), 0);
+
+        //shorter step durations still win
+        mEngine.jumpTo(0);
+        mEngine.animateTo(1, mNow, FRAME_DURATION_IN_MS);
+        assertFalse(mEngine.update(mNow + STEP_DURATION_IN_MS));
+    }
+
+    @Test
+    public void resizeDuringAnimationKeepsTheRadiusInSync() {
+        mEngine.animateTo(100, mNow);
+        mNow += 250;
+        mEngine.update(mNow);
+        assertEquals(25, mEngine.getProgress(), 0);
+
+        //the radius only depends on the progress, so a new size applies right away
+        float resizedEndRadius = END_RADIUS / 2;
+        assertEquals(BEGINNING_RADIUS + (resizedEndRadius - BEGINNING_RADIUS) / 4,
+                ProgressEngine.getRadius(mEngine.getProgress(), mEngine.getMaxProgress(), BEGINNING_RADIUS, resizedEndRadius), 1e-4f);
+
+        runToEnd();
+        assertEquals(resizedEndRadius,
+                ProgressEngine.getRadius(mEngine.getProgress(), mEngine.getMaxProgress(), BEGINNING_RADIUS, resizedEndRadius), 0);
+    }
+
+    @Test
+    public void resetDuringAnimationStopsAtZero() {
+        mEngine.animateTo(100, mNow);
+        mNow += 500;
+        mEngine.update(mNow);
+        assertTrue(mEngine.isRunning());
+
+        mEngine.jumpTo(0);
+        assertFalse(mEngine.isRunning());
+        assertFalse(mEngine.update(mNow + 1000));
+        assertEquals(0, mEngine.getProgress(), 0);
+        assertEquals(0, mEngine.getLabelProgress());
+        assertEquals(BEGINNING_RADIUS, radius(), 0);
+
+        mEngine.animateTo(10, mNow);
+        runToEnd();
+        assertEquals(10, mEngine.getLabelProgress());
+    }
+
+    @Test
+    public void maxChangeDuringAnimation() {
+        mEngine.animateTo(100, mNow);
+        mNow += 500;
+        mEngine.update(mNow);
+        assertEquals(50, mEngine.getProgress(), 0);
+
+        //a larger maximum shrinks the circle for the same progress and keeps the animation going
+        mEngine.setMaxProgress(200);
+        assertEquals(BEGINNING_RADIUS + (END_RADIUS - BEGINNING_RADIUS) / 4, radius(), 1e-4f);
+        runToEnd();
+        assertEquals(100, mEngine.getLabelProgress());
+        assertEquals(BEGINNING_RADIUS + (END_RADIUS - BEGINNING_RADIUS) / 2, radius(), 1e-4f);
+
+        //a smaller maximum clamps the next target
+        mEngine.setMaxProgress(50);
+        mEngine.animateTo(mEngine.getTargetProgress(), mNow);
+        runToEnd();
+        assertEquals(50, mEngine.getLabelProgress());
+        assertEquals(END_RADIUS, radius(), 0);
+    }
+}
@@ -0,0 +1,81 @@
+package com.alterego.progressbarlayout.engine;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProgressLabelFormatTest {
+
+    private static final int WARM_UP_STEPS = 100000;
+    private static final int MEASURED_STEPS = 1000000;
+
+    @Test
+    public void formatsLikeStringFormat() {
+        String[] templates = {"%d", "%d%%", "Loading %d%%", "%% %d done", "-%d-"};
+        long[] values = {0, 7, 42, 100, 12345678901L, -3, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (String template : templates) {
+            ProgressLabelFormat format = ProgressLabelFormat.compile(template);
+            assertNotNull(template, format);
+            for (long value : values) {
+                int length = format.format(value);
+                assertEquals(template, String.format(template, value), new String(format.getChars(), 0, length));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsTemplatesItCannotFormat() {
+        assertNull(ProgressLabelFormat.compile(null));
+        assertNull(ProgressLabelFormat.compile("Loading"));
+        assertNull(ProgressLabelFormat.compile("%d of %d"));
+        assertNull(ProgressLabelFormat.compile("%s"));
+        assertNull(ProgressLabelFormat.compile("%5d"));
+        assertNull(ProgressLabelFormat.compile("%d%"));
+    }
+
+    @Test
+    public void leavesLineBreaksToTheLayoutPath() {
+        assertNull(ProgressLabelFormat.compile("%d%n%%"));
+        assertNull(ProgressLabelFormat.compile("%d\n%%"));
+        assertNull(ProgressLabelFormat.compile("Loading\r\n%d"));
+    }
+
+    @Test
+    public void formatsWithoutAllocating() {
+        Assume.assumeTrue(Allocations.isSupported());
+        ProgressLabelFormat format = ProgressLabelFormat.compile("Loading %d%%");
+
+        long checksum = 0;
+        for (int i = 0; i < WARM_UP_STEPS; i++)
+            checksum += format.format(i);
+
+        long before = Allocations.allocatedBytes();
+        for (int i = 0; i < MEASURED_STEPS; i++)
+            checksum += format.format(i);
+        long allocated = Allocations.allocatedBytes() - before;
+
+        assertTrue(checksum > 0);
+        //the measurement itself can allocate a few bytes, a single object per step can't hide in them
+        assertEquals("bytes allocated per step", 0, allocated / MEASURED_STEPS);
+    }
+}
@@ -0,0 +1,91 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Readable channel counting the bytes read through it, as a {@link ProgressSource}. The bytes are
+ * read straight into the caller's buffer, reading only adds to a counter and the view samples it
+ * once per frame.
+ * <p/>
+ * The channel is meant to be read by a single thread.
+ */
+public class CountingByteChannel implements ReadableByteChannel, ProgressSource {
+
+    private final ReadableByteChannel mChannel;
+    private final long mLength;
+    //written by the reading thread only, read by the UI thread
+    private volatile long mCount;
+    private volatile boolean mFinished;
+
+    /**
+     * @param channel channel to read
+     * @param length  number of bytes expected (the size of a file, for example), or 0 or less if unknown
+     */
+    public CountingByteChannel(ReadableByteChannel channel, long length) {
+        mChannel = channel;
+        mLength = length;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = mChannel.read(dst);
+        if (read > 0)
+            mCount = mCount + read;
+        else if (read == -1)
+            mFinished = true;
+        return read;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mChannel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFinished = true;
+        mChannel.close();
+    }
+
+    /**
+     * @return number of bytes read so far
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    @Override
+    public long getProgress() {
+        return mCount;
+    }
+
+    @Override
+    public long getMaxProgress() {
+        return mLength;
+    }
+
+    /**
+     * @return true once a read reached the end of the channel or the channel was closed
+     */
+    @Override
+    public boolean isFinished() {
+        return mFinished;
+    }
+}
@@ -0,0 +1,122 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream counting the bytes read through it, as a {@link ProgressSource}. Reading only adds to
+ * a counter: there's no callback per read and the data isn't copied, the view samples the counter
+ * once per frame.
+ * <p/>
+ * The stream is meant to be read by a single thread.
+ */
+public class CountingInputStream extends FilterInputStream implements ProgressSource {
+
+    private final long mLength;
+    //written by the reading thread only, read by the UI thread
+    private volatile long mCount;
+    private volatile boolean mFinished;
+    private long mMark = -1;
+
+    /**
+     * @param in     stream to read
+     * @param length number of bytes expected (a content length, for example), or 0 or less if unknown
+     */
+    public CountingInputStream(InputStream in, long length) {
+        super(in);
+        mLength = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1)
+            mCount = mCount + 1;
+        else
+            mFinished = true;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        int read = in.read(buffer, offset, count);
+        if (read > 0)
+            mCount = mCount + read;
+        else if (read == -1)
+            mFinished = true;
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        long skipped = in.skip(count);
+        if (skipped > 0)
+            mCount = mCount + skipped;
+        return skipped;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        in.mark(readLimit);
+        mMark = mCount;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (!in.markSupported())
+            throw new IOException("Mark not supported");
+        if (mMark == -1)
+            throw new IOException("Mark not set");
+
+        in.reset();
+        mCount = mMark;
+        mFinished = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFinished = true;
+        super.close();
+    }
+
+    /**
+     * @return number of bytes read or skipped so far
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    @Override
+    public long getProgress() {
+        return mCount;
+    }
+
+    @Override
+    public long getMaxProgress() {
+        return mLength;
+    }
+
+    /**
+     * @return true once a read reached the end of the stream or the stream was closed
+     */
+    @Override
+    public boolean isFinished() {
+        return mFinished;
+    }
+}
@@ -0,0 +1,145 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.animation.AlphaAnimation;
+import android.view.animation.Animation;
+import android.view.animation.AnimationUtils;
+
+import java.util.ArrayList;
+
+/**
+ * Process-wide pool of the cross-animations, so that views inflated from the same attributes share
+ * the animations parsed from their resources instead of each parsing its own at inflation time.
+ * <p/>
+ * An animation carries its running state, so it is handed to one view at a time: it's taken out of
+ * the pool when a cross-animation starts and goes back after it ends, once the view running it has
+ * let it go. Must be used on the UI thread.
+ */
+class CrossAnimationPool {
+
+    /**
+     * Maximum number of idle animations kept for each resource
+     */
+    private static final int MAX_IDLE_PER_RESOURCE = 4;
+
+    private static final SparseArray<ArrayList<Animation>> sIdleAnimations = new SparseArray<ArrayList<Animation>>();
+    private static final Handler sMainThreadHandler = new Handler(Looper.getMainLooper());
+
+    private CrossAnimationPool() {
+    }
+
+    /**
+     * Returns an animation of the given duration, loaded from the resource, or an alpha animation when
+     * no resource is set.
+     *
+     * @param context   context used to load the resource
+     * @param resId     animation resource, or -1 for the default alpha animation
+     * @param fromAlpha starting alpha of the default animation
+     * @param toAlpha   ending alpha of the default animation
+     * @param duration  duration in ms
+     */
+    static Animation obtain(Context context, int resId, float fromAlpha, float toAlpha, int duration) {
+        Animation animation = null;
+
+        if (resId != -1) {
+            ArrayList<Animation> idle = sIdleAnimations.get(resId);
+            if (idle != null && !idle.isEmpty())
+                animation = idle.remove(idle.size() - 1);
+            else
+                animation = AnimationUtils.loadAnimation(context.getApplicationContext(), resId);
+        }
+
+        if (animation == null)
+            animation = new AlphaAnimation(fromAlpha, toAlpha);
+
+        animation.setDuration(duration);
+        return animation;
+    }
+
+    /**
+     * Returns an animation to the pool once it has ended and no view holds it anymore. Default alpha
+     * animations are not pooled.
+     *
+     * @param resId     resource the animation was loaded from, or -1
+     * @param animation animation
+     */
+    static void recycle(int resId, Animation animation) {
+        animation.setAnimationListener(null);
+        if (resId == -1)
+            return;
+
+        ArrayList<Animation> idle = sIdleAnimations.get(resId);
+        if (idle == null) {
+            idle = new ArrayList<Animation>(MAX_IDLE_PER_RESOURCE);
+            sIdleAnimations.put(resId, idle);
+        }
+        if (idle.size() < MAX_IDLE_PER_RESOURCE && !idle.contains(animation)) {
+            animation.reset();
+            idle.add(animation);
+        }
+    }
+
+    /**
+     * Listener that gives the animation back to the pool when it ends. The end is reported while
+     * the view is still drawing the animation, so the animation is cleared from the view and
+     * recycled after that frame: resetting it right away would make the view run it again, and
+     * another view could obtain it in the meantime.
+     */
+    static class RecyclingListener implements Animation.AnimationListener {
+
+        private final int mResId;
+        private final View mView;
+
+        /**
+         * @param resId resource the animation was loaded from, or -1
+         * @param view  view the animation runs on
+         */
+        RecyclingListener(int resId, View view) {
+            mResId = resId;
+            mView = view;
+        }
+
+        @Override
+        public void onAnimationStart(Animation animation) {
+        }
+
+        @Override
+        public void onAnimationEnd(final Animation animation) {
+            if (mResId == -1)
+                return;
+
+            sMainThreadHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mView.getAnimation() == animation)
+                        mView.clearAnimation();
+                    recycle(mResId, animation);
+                }
+            });
+        }
+
+        @Override
+        public void onAnimationRepeat(Animation animation) {
+        }
+    }
+}
@@ -0,0 +1,741 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.util.Log;
+
+import com.alterego.progressbarlayout.engine.ProgressEngine;
+import com.alterego.progressbarlayout.engine.ProgressLabelFormat;
+import com.alterego.progressbarlayout.engine.ProgressRadiusCurve;
+
+/**
+ * Drawable rendering the progress circle and label of a
+ * {@link com.alterego.progressbarlayout.ProgressBarLayoutView}, for places where a whole view is too
+ * much: list rows, or the background or foreground of an existing view.
+ * <p/>
+ * It takes the same attributes as the view and animates by itself: set the progress with
+ * {@link #setProgress(long)}, or with {@link #setLevel(int)} (0 to 10000, like the other level
+ * drawables), and it animates to it, invalidating itself once per frame while it's visible. The
+ * {@link com.alterego.progressbarlayout.ProgressBarLayoutView} renders through this drawable too,
+ * driving it from its own animation.
+ * <p/>
+ * Must be used on the UI thread.
+ */
+public class ProgressBarLayoutDrawable extends Drawable {
+
+    private static final String TAG = "ProgressBarLayoutDrawable";
+    private static final int STEP_DURATION_IN_MS = 10;
+    private static final int MAX_LEVEL = 10000;
+    private static final boolean DEBUG_LOGGING = false;
+
+    private static final float TEXTPAINT_SPACING_MULT = 1.0f;
+    private static final float TEXTPAINT_SPACING_ADD = 0.0f;
+
+    //values of the radiusInterpolator attribute
+    private static final int RADIUS_LINEAR = 0;
+    private static final int RADIUS_AREA_LINEAR = 1;
+    private static final int RADIUS_EASE_OUT = 2;
+
+    private final Paint mProgressCirclePaint;
+    private final TextPaint mTextPaint;
+    private int mProgressCircleColor = 0xff666666;
+    private int mTextProgressColor = 0xff000000;
+    private int mAlpha = 255;
+    private float mTextSize = 24.0f;
+    private Typeface mTypeface;
+    private String mTextProgressString;
+    private float mBeginningProgressSize = 0.0f;
+    //linear radii are computed directly, the others are looked up in a shared curve
+    private ProgressRadiusCurve.Interpolator mRadiusInterpolator = ProgressRadiusCurve.LINEAR;
+    private ProgressRadiusCurve mRadiusCurve;
+
+    private ProgressBarLayoutView.IProgressStringFormatter mProgressStringFormatter = new DefaultProgressStringFormatter();
+    private Layout mTextToPrint;
+    private boolean mLabelInvalid = true;
+    private boolean mAllocationFreeUpdates = false;
+    private int mLabelRenderer = ProgressBarLayoutView.LABEL_RENDERER_LAYOUT;
+    private ProgressLabelFormat mLabelFormat;
+    private ProgressGlyphAtlas mGlyphAtlas;
+    private final Paint.FontMetricsInt mLabelFontMetrics = new Paint.FontMetricsInt();
+    private ProgressBarLayoutMetrics mMetrics;
+
+    //geometry, computed when the bounds or the content padding change
+    private int mPaddingLeft;
+    private int mPaddingTop;
+    private int mPaddingRight;
+    private int mPaddingBottom;
+    private int mWidth = 0;
+    private int mHeight = 0;
+    private int mCenterX = 0;
+    private int mCenterY = 0;
+    private boolean mClipToPadding = false;
+    private final Rect mContentRect = new Rect();
+    private final Rect mDrawnRect = new Rect();
+    private float mCoveringRadius;
+
+    //rendered state: the circle follows the exact progress, the label the whole progress value
+    private double mProgress = 0;
+    private long mLabelProgress = 0;
+    private float mRadius = 0;
+    private final Rect mDirtyRect = new Rect();
+    private final Rect mLabelBounds = new Rect();
+    //label position, computed when the label changes: baseline for the allocation-free label, top for layouts
+    private float mLabelX;
+    private float mLabelY;
+
+    //work counters, for harnesses checking what an animation costs
+    private int mLabelUpdateCount = 0;
+    private int mFormatterCallCount = 0;
+
+    //animation of the progress set on the drawable itself
+    private final ProgressEngine mProgressEngine = new ProgressEngine(STEP_DURATION_IN_MS);
+    private final LevelAnimator mLevelAnimator = new LevelAnimator();
+
+    public ProgressBarLayoutDrawable() {
+        mProgressCirclePaint = new Paint();
+        mProgressCirclePaint.setFlags(Paint.ANTI_ALIAS_FLAG);
+        mProgressCirclePaint.setStyle(Paint.Style.FILL);
+        mTextPaint = new TextPaint();
+        mTextPaint.setAntiAlias(true);
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+        mTextPaint.setTextSize(mTextSize);
+        applyColors();
+    }
+
+    /**
+     * Creates the drawable with the ProgressBarLayoutView attributes of the attribute set.
+     *
+     * @param context context
+     * @param attrs   attributes, as for the view
+     */
+    public ProgressBarLayoutDrawable(Context context, AttributeSet attrs) {
+        this();
+        TypedArray a = context.getTheme().obtainStyledAttributes(attrs,
+                R.styleable.ProgressBarLayoutView, 0, 0);
+        try {
+            readAttributes(a);
+            mProgressEngine.setStepDuration(a.getInteger(R.styleable.ProgressBarLayoutView_stepDurationInMs, STEP_DURATION_IN_MS));
+            mProgressEngine.setMaxAnimationDuration(a.getInteger(R.styleable.ProgressBarLayoutView_maxAnimationDurationInMs, 0));
+            mProgressEngine.setMaxProgressSpeed(a.getFloat(R.styleable.ProgressBarLayoutView_maxProgressSpeed, 0));
+        } finally {
+            a.recycle();
+        }
+    }
+
+    /**
+     * Reads the rendering attributes, shared with the view so the attributes are parsed only once.
+     */
+    void readAttributes(TypedArray a) {
+        mBeginningProgressSize = a.getDimension(
+                R.styleable.ProgressBarLayoutView_beginningProgressSize,
+                0.0f);
+        mProgressCircleColor = a.getColor(
+                R.styleable.ProgressBarLayoutView_progressCircleColor,
+                0xff666666);
+        mTextSize = a.getDimension(
+                R.styleable.ProgressBarLayoutView_textProgressSize,
+                24.0f);
+        mTextProgressColor = a.getColor(
+                R.styleable.ProgressBarLayoutView_textProgressColor,
+                0xff000000);
+        mTextProgressString = a.getString(
+                R.styleable.ProgressBarLayoutView_textProgressString);
+        mClipToPadding = a.getBoolean(R.styleable.ProgressBarLayoutView_clipProgressToPadding, false);
+        mAllocationFreeUpdates = a.getBoolean(R.styleable.ProgressBarLayoutView_allocationFreeUpdates, false);
+        mLabelRenderer = a.getInt(R.styleable.ProgressBarLayoutView_labelRenderer, ProgressBarLayoutView.LABEL_RENDERER_LAYOUT);
+        mLabelFormat = ProgressLabelFormat.compile(mTextProgressString);
+        mRadiusInterpolator = getRadiusInterpolator(a.getInt(R.styleable.ProgressBarLayoutView_radiusInterpolator, RADIUS_LINEAR));
+
+        mTextPaint.setTextSize(mTextSize);
+        applyColors();
+        updateRadiusCurve();
+        mLabelInvalid = true;
+    }
+
+    /**
+     * Sets the progress, animating to it.
+     *
+     * @param progress progress, between 0 and max progress
+     */
+    public void setProgress(long progress) {
+        mLevelAnimator.start(progress);
+    }
+
+    /**
+     * @return the progress the drawable is animating (or has animated) to
+     */
+    public long getProgress() {
+        return mProgressEngine.getTargetProgress();
+    }
+
+    /**
+     * @param maxProgress maximum progress (default is 100)
+     */
+    public void setMaxProgress(long maxProgress) {
+        if (mProgressEngine.getMaxProgress() != maxProgress) {
+            mProgressEngine.setMaxProgress(maxProgress);
+            updateRadiusCurve();
+            invalidateSelf();
+        }
+    }
+
+    public long getMaxProgress() {
+        return mProgressEngine.getMaxProgress();
+    }
+
+    /**
+     * See {@link com.alterego.progressbarlayout.ProgressBarLayoutView#setMaxAnimationDuration(int)}.
+     */
+    public void setMaxAnimationDuration(int durationInMs) {
+        mProgressEngine.setMaxAnimationDuration(durationInMs);
+    }
+
+    /**
+     * See {@link com.alterego.progressbarlayout.ProgressBarLayoutView#setMaxProgressSpeed(float)}.
+     */
+    public void setMaxProgressSpeed(float unitsPerSecond) {
+        mProgressEngine.setMaxProgressSpeed(unitsPerSecond);
+    }
+
+    @Override
+    protected boolean onLevelChange(int level) {
+        setProgress(Math.round((double) level * mProgressEngine.getMaxProgress() / MAX_LEVEL));
+        return true;
+    }
+
+    @Override
+    public boolean setVisible(boolean visible, boolean restart) {
+        boolean changed = super.setVisible(visible, restart);
+        if (changed) {
+            if (visible)
+                mLevelAnimator.resume();
+            else
+                mLevelAnimator.pause();
+        }
+        return changed;
+    }
+
+    /**
+     * @param color color of the progress circle
+     */
+    public void setProgressColor(int color) {
+        mProgressCircleColor = color;
+        applyColors();
+        invalidateSelf();
+    }
+
+    /**
+     * @param color color of the progress text
+     */
+    public void setProgressTextColor(int color) {
+        mTextProgressColor = color;
+        applyColors();
+        invalidateSelf();
+    }
+
+    /**
+     * @param size size of the progress text
+     */
+    public void setTextProgressSize(float size) {
+        if (mTextSize != size) {
+            mTextSize = size;
+            mTextPaint.setTextSize(mTextSize);
+            invalidateLabel();
+        }
+    }
+
+    /**
+     * @param font typeface for the label
+     */
+    public void setTypeface(Typeface font) {
+        if (mTypeface != font) {
+            mTypeface = font;
+            mTextPaint.setTypeface(mTypeface);
+            invalidateLabel();
+        }
+    }
+
+    public Typeface getTypeface() {
+        return mTypeface;
+    }
+
+    /**
+     * @param progressString progress string, as the textProgressString parameter
+     */
+    public void setTextProgressString(String progressString) {
+        if (progressString == null ? mTextProgressString != null : !progressString.equals(mTextProgressString)) {
+            mTextProgressString = progressString;
+            mLabelFormat = ProgressLabelFormat.compile(mTextProgressString);
+            invalidateLabel();
+        }
+    }
+
+    public String getTextProgressString() {
+        return mTextProgressString;
+    }
+
+    /**
+     * @param size size of the circle for progress 0
+     */
+    public void setBeginningProgressSize(float size) {
+        mBeginningProgressSize = size;
+        updateRadiusCurve();
+        invalidateSelf();
+    }
+
+    /**
+     * Sets how the radius grows with the progress, {@link ProgressRadiusCurve#LINEAR} (default),
+     * {@link ProgressRadiusCurve#AREA_LINEAR}, {@link ProgressRadiusCurve#EASE_OUT} or a custom
+     * interpolator. Non linear radii are precomputed into a lookup table shared by the drawables
+     * with the same size, maximum and interpolator.
+     *
+     * @param interpolator radius interpolator
+     */
+    public void setRadiusInterpolator(ProgressRadiusCurve.Interpolator interpolator) {
+        if (mRadiusInterpolator != interpolator) {
+            mRadiusInterpolator = interpolator;
+            updateRadiusCurve();
+            invalidateSelf();
+        }
+    }
+
+    private static ProgressRadiusCurve.Interpolator getRadiusInterpolator(int attributeValue) {
+        switch (attributeValue) {
+            case RADIUS_AREA_LINEAR:
+                return ProgressRadiusCurve.AREA_LINEAR;
+            case RADIUS_EASE_OUT:
+                return ProgressRadiusCurve.EASE_OUT;
+            default:
+                return ProgressRadiusCurve.LINEAR;
+        }
+    }
+
+    /**
+     * See {@link com.alterego.progressbarlayout.ProgressBarLayoutView#setProgressStringFormatter(ProgressBarLayoutView.IProgressStringFormatter)}.
+     */
+    public void setProgressStringFormatter(ProgressBarLayoutView.IProgressStringFormatter progressStringFormatter) {
+        mProgressStringFormatter = progressStringFormatter;
+        invalidateLabel();
+    }
+
+    /**
+     * See {@link com.alterego.progressbarlayout.ProgressBarLayoutView#setAllocationFreeUpdates(boolean)}.
+     */
+    public void setAllocationFreeUpdates(boolean allocationFree) {
+        if (mAllocationFreeUpdates != allocationFree) {
+            mAllocationFreeUpdates = allocationFree;
+            invalidateLabel();
+        }
+    }
+
+    /**
+     * See {@link com.alterego.progressbarlayout.ProgressBarLayoutView#setLabelRenderer(int)}.
+     */
+    public void setLabelRenderer(int labelRenderer) {
+        if (mLabelRenderer != labelRenderer) {
+            mLabelRenderer = labelRenderer;
+            if (mLabelRenderer != ProgressBarLayoutView.LABEL_RENDERER_GLYPH_ATLAS)
+                releaseGlyphAtlas();
+            invalidateLabel();
+        }
+    }
+
+    /**
+     * Sets whether the progress is clipped to the content area, inside the padding (default is false).
+     */
+    public void setClipToPadding(boolean clipToPadding) {
+        if (mClipToPadding != clipToPadding) {
+            mClipToPadding = clipToPadding;
+            computeGeometry();
+            invalidateSelf();
+        }
+    }
+
+    /**
+     * Sets the padding around the content area, in which the circle and the label are centered.
+     * It's not reported by {@link #getPadding(android.graphics.Rect)}, so it doesn't change the
+     * padding of a view the drawable is the background of.
+     */
+    public void setContentPadding(int left, int top, int right, int bottom) {
+        if (mPaddingLeft != left || mPaddingTop != top || mPaddingRight != right || mPaddingBottom != bottom) {
+            mPaddingLeft = left;
+            mPaddingTop = top;
+            mPaddingRight = right;
+            mPaddingBottom = bottom;
+            computeGeometry();
+            invalidateLabel();
+        }
+    }
+
+    @Override
+    protected void onBoundsChange(Rect bounds) {
+        computeGeometry();
+        mLabelInvalid = true;
+    }
+
+    private void computeGeometry() {
+        Rect bounds = getBounds();
+        mWidth = bounds.width() - mPaddingLeft - mPaddingRight;
+        mHeight = bounds.height() - mPaddingTop - mPaddingBottom;
+        mCenterX = bounds.left + mWidth / 2;
+        mCenterY = bounds.top + mHeight / 2;
+        if (DEBUG_LOGGING) Log.i(TAG, "mWidth = " + mWidth + ", mHeight = " + mHeight);
+
+        mContentRect.set(bounds.left + mPaddingLeft, bounds.top + mPaddingTop,
+                bounds.right - mPaddingRight, bounds.bottom - mPaddingBottom);
+
+        if (mClipToPadding)
+            mDrawnRect.set(mContentRect);
+        else
+            mDrawnRect.set(bounds);
+
+        //the circle covers the drawn area once it reaches its farthest corner
+        float farthestX = Math.max(mCenterX - mDrawnRect.left, mDrawnRect.right - mCenterX);
+        float farthestY = Math.max(mCenterY - mDrawnRect.top, mDrawnRect.bottom - mCenterY);
+        mCoveringRadius = (float) Math.sqrt(farthestX * farthestX + farthestY * farthestY);
+
+        updateRadiusCurve();
+    }
+
+    /**
+     * Picks the curve for the current size, maximum and interpolator, and moves the radius on it.
+     */
+    private void updateRadiusCurve() {
+        if (mRadiusInterpolator == ProgressRadiusCurve.LINEAR)
+            mRadiusCurve = null;
+        else
+            mRadiusCurve = ProgressRadiusCurve.obtain(mRadiusInterpolator, mProgressEngine.getMaxProgress(),
+                    mBeginningProgressSize, getHalfDiagonal());
+        mRadius = getRadius(mProgress);
+    }
+
+    private int getHalfDiagonal() {
+        return (int) Math.sqrt((double) mWidth * mWidth + mHeight * mHeight) / 2;
+    }
+
+    /**
+     * The radius is always computed from the progress, so it can't drift from it however many updates
+     * there are, and it follows changes of size, maximum and beginning size.
+     */
+    private float getRadius(double progress) {
+        if (mRadiusCurve != null)
+            return mRadiusCurve.getRadius(progress);
+        return ProgressEngine.getRadius(progress, mProgressEngine.getMaxProgress(), mBeginningProgressSize, getHalfDiagonal());
+    }
+
+    /**
+     * Makes the label be rebuilt, at the latest when the drawable is drawn.
+     */
+    void invalidateLabel() {
+        mLabelInvalid = true;
+        invalidateSelf();
+    }
+
+    void setMetrics(ProgressBarLayoutMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    void releaseGlyphAtlas() {
+        if (mGlyphAtlas != null) {
+            mGlyphAtlas.release();
+            mGlyphAtlas = null;
+        }
+    }
+
+    /**
+     * Moves to the (possibly fractional) animated progress: the circle radius follows the exact
+     * position, while the label is updated only when the whole progress value changes. Doesn't
+     * invalidate, the changed area is left in {@link #getDirtyRect()}.
+     *
+     * @return true if something changed and the dirty rect must be redrawn
+     */
+    boolean setAnimatedProgress(double progress, long labelProgress) {
+        mDirtyRect.setEmpty();
+
+        float oldRadius = mRadius;
+        mProgress = progress;
+        mRadius = getRadius(progress);
+        addCircleToDirtyRect(oldRadius, mRadius);
+
+        if (labelProgress != mLabelProgress || mLabelInvalid) {
+            mLabelProgress = labelProgress;
+            updateLabel();
+        }
+
+        return !mDirtyRect.isEmpty();
+    }
+
+    /**
+     * @return current radius of the circle
+     */
+    float getRadius() {
+        return mRadius;
+    }
+
+    /**
+     * @return whole progress value the label shows
+     */
+    long getLabelProgress() {
+        return mLabelProgress;
+    }
+
+    /**
+     * @return number of times the label was rebuilt
+     */
+    int getLabelUpdateCount() {
+        return mLabelUpdateCount;
+    }
+
+    /**
+     * @return number of calls to the progress string formatter (labels built as layouts)
+     */
+    int getFormatterCallCount() {
+        return mFormatterCallCount;
+    }
+
+    /**
+     * @return the area changed by the last {@link #setAnimatedProgress(double, long)}
+     */
+    Rect getDirtyRect() {
+        return mDirtyRect;
+    }
+
+    /**
+     * Adds the part changed by the circle going from the old to the new radius to the dirty rect.
+     * Once the circle covers the whole drawn area, changing its radius changes nothing.
+     */
+    private void addCircleToDirtyRect(float oldRadius, float newRadius) {
+        if (oldRadius == newRadius || (oldRadius >= mCoveringRadius && newRadius >= mCoveringRadius))
+            return;
+
+        //one pixel more on each side for the antialiased edge
+        int radius = (int) Math.ceil(Math.max(oldRadius, newRadius)) + 1;
+        mDirtyRect.union(mCenterX - radius, mCenterY - radius, mCenterX + radius, mCenterY + radius);
+    }
+
+    /**
+     * Formats the label for the progress, adding both the old and the new label bounds to the dirty rect.
+     */
+    private void updateLabel() {
+        mLabelInvalid = false;
+        mLabelUpdateCount++;
+        mDirtyRect.union(mLabelBounds);
+        if (isAllocationFreeLabel()) {
+            mTextToPrint = null;
+            mLabelFormat.format(mLabelProgress);
+        } else {
+            int formatterProgress = (int) Math.max(Integer.MIN_VALUE, Math.min(mLabelProgress, Integer.MAX_VALUE));
+            long formatStart = mMetrics != null ? System.nanoTime() : 0;
+            mFormatterCallCount++;
+            mTextToPrint = mProgressStringFormatter.formatProgressString(formatterProgress, mTextProgressString, mTextPaint, mWidth, mPaddingLeft, mPaddingRight);
+            if (mMetrics != null)
+                mMetrics.recordFormatTime(System.nanoTime() - formatStart);
+        }
+        computeLabelBounds(mLabelBounds);
+        mDirtyRect.union(mLabelBounds);
+    }
+
+    /**
+     * The label is centered horizontally on a line of the drawable, so its bounds are the whole width
+     * of the drawable and the height of the label.
+     */
+    private void computeLabelBounds(Rect bounds) {
+        int top;
+        int bottom;
+        mLabelX = mCenterX - mPaddingLeft;
+        if (isAllocationFreeLabel()) {
+            mTextPaint.getFontMetricsInt(mLabelFontMetrics);
+            int labelHeight = mLabelFontMetrics.descent - mLabelFontMetrics.ascent;
+            mLabelY = mCenterY - mPaddingTop - labelHeight / 2 - mLabelFontMetrics.ascent;
+            top = (int) mLabelY + mLabelFontMetrics.top;
+            bottom = (int) mLabelY + mLabelFontMetrics.bottom;
+        } else if (mTextToPrint != null) {
+            top = mCenterY - mPaddingTop - mTextToPrint.getHeight() / 2;
+            mLabelY = top;
+            bottom = top + mTextToPrint.getHeight();
+        } else {
+            bounds.setEmpty();
+            return;
+        }
+        Rect drawableBounds = getBounds();
+        bounds.set(drawableBounds.left, top - 1, drawableBounds.right, bottom + 1);
+    }
+
+    /**
+     * The allocation-free label (drawn as text or from the glyph atlas) is used only with the default
+     * formatter and simple progress strings (literal text, "%%" and a single "%d"), the rest is always
+     * formatted through {@link com.alterego.progressbarlayout.ProgressBarLayoutView.IProgressStringFormatter}.
+     */
+    private boolean isAllocationFreeLabel() {
+        return (mAllocationFreeUpdates || mLabelRenderer == ProgressBarLayoutView.LABEL_RENDERER_GLYPH_ATLAS) && mLabelFormat != null
+                && mProgressStringFormatter instanceof DefaultProgressStringFormatter;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        //style changes only mark the label, it's rebuilt once here
+        if (mLabelInvalid)
+            updateLabel();
+
+        if (mClipToPadding) {
+            canvas.save();
+            canvas.clipRect(mContentRect);
+        }
+
+        //once the circle covers everything that's drawn, a plain fill gives the same result for less work
+        if (mRadius >= mCoveringRadius)
+            canvas.drawRect(mDrawnRect, mProgressCirclePaint);
+        else if (mRadius > 0)
+            canvas.drawCircle(mCenterX, mCenterY, mRadius, mProgressCirclePaint);
+
+        if (isAllocationFreeLabel()) {
+            if (mLabelRenderer == ProgressBarLayoutView.LABEL_RENDERER_GLYPH_ATLAS) {
+                if (mGlyphAtlas == null)
+                    mGlyphAtlas = new ProgressGlyphAtlas();
+                mGlyphAtlas.draw(canvas, mLabelFormat.getChars(), mLabelFormat.length(), mLabelFormat.getGlyphs(),
+                        mLabelX, mLabelY, mTextPaint);
+            } else {
+                canvas.drawText(mLabelFormat.getChars(), 0, mLabelFormat.length(), mLabelX, mLabelY, mTextPaint);
+            }
+        } else if (mTextToPrint != null) {
+            canvas.save();
+            canvas.translate(mLabelX, mLabelY);
+            mTextToPrint.draw(canvas);
+            canvas.restore();
+        }
+
+        if (mClipToPadding)
+            canvas.restore();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mAlpha = alpha;
+        applyColors();
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        mProgressCirclePaint.setColorFilter(cf);
+        mTextPaint.setColorFilter(cf);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    private void applyColors() {
+        mProgressCirclePaint.setColor(mProgressCircleColor);
+        mTextPaint.setColor(mTextProgressColor);
+        if (mAlpha != 255) {
+            mProgressCirclePaint.setAlpha(Color.alpha(mProgressCircleColor) * mAlpha / 255);
+            mTextPaint.setAlpha(Color.alpha(mTextProgressColor) * mAlpha / 255);
+        }
+    }
+
+    /**
+     * Animates the progress set on the drawable, one step per display frame of the shared
+     * {@link com.alterego.progressbarlayout.ProgressFrameTicker}, while the drawable is visible.
+     */
+    private class LevelAnimator implements ProgressFrameTicker.FrameListener {
+
+        void start(long targetProgress) {
+            mProgressEngine.animateTo(targetProgress, ProgressFrameTicker.getInstance().uptimeMillis());
+            register();
+        }
+
+        void register() {
+            if (mProgressEngine.isRunning() && isVisible())
+                ProgressFrameTicker.getInstance().addFrameListener(this);
+        }
+
+        void pause() {
+            mProgressEngine.pause(ProgressFrameTicker.getInstance().uptimeMillis());
+            ProgressFrameTicker.getInstance().removeFrameListener(this);
+        }
+
+        void resume() {
+            mProgressEngine.resume(ProgressFrameTicker.getInstance().uptimeMillis());
+            register();
+        }
+
+        @Override
+        public void doFrame(long frameTimeMillis) {
+            boolean running = mProgressEngine.update(frameTimeMillis);
+            if (DEBUG_LOGGING)
+                Log.d(TAG, "LevelAnimator frame time = " + frameTimeMillis + ", progress = " + mProgressEngine.getProgress());
+            if (setAnimatedProgress(mProgressEngine.getProgress(), mProgressEngine.getLabelProgress()))
+                invalidateSelf();
+            if (!running)
+                ProgressFrameTicker.getInstance().removeFrameListener(this);
+        }
+    }
+
+    private static class DefaultProgressStringFormatter implements ProgressBarLayoutView.IProgressStringFormatter {
+
+        private final ProgressLabelCache mLabelCache = new ProgressLabelCache();
+
+        @Override
+        public Layout formatProgressString(int progress, String progressString, TextPaint textPaint, int width, int padding_left, int padding_right) {
+            if (progressString != null) {
+                int layoutWidth = Math.abs((width - padding_left - padding_right));
+                Layout cachedLayout = mLabelCache.get(progress, progressString, textPaint, layoutWidth);
+                if (cachedLayout != null)
+                    return cachedLayout;
+
+                try {
+                    String currentProgressString = String.format(progressString, progress);
+                    if (DEBUG_LOGGING)
+                        Log.v(TAG, "formatProgressString currentProgressString = " + currentProgressString);
+                    StaticLayout textToPrint = new StaticLayout(currentProgressString,
+                            textPaint,
+                            layoutWidth,
+                            Layout.Alignment.ALIGN_NORMAL,
+                            TEXTPAINT_SPACING_MULT,
+                            TEXTPAINT_SPACING_ADD,
+                            false);
+
+                    if (DEBUG_LOGGING)
+                        Log.d(TAG, "formatProgressString height of static layout = " + textToPrint.getHeight() + ", width = " + textToPrint.getWidth());
+                    mLabelCache.put(progress, progressString, textPaint, layoutWidth, textToPrint);
+                    return textToPrint;
+                } catch (Exception e) {
+                    Log.e(TAG, "formatProgressString formatting error = " + e.toString());
+                }
+            }
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+/**
+ * Runtime performance metrics of a {@link com.alterego.progressbarlayout.ProgressBarLayoutView},
+ * enabled with {@link ProgressBarLayoutView#setMetricsListener(ProgressBarLayoutMetrics.Listener, long)}.
+ * <p/>
+ * Durations are aggregated into fixed-size {@link Histogram}s and events into counters, so recording
+ * a sample never allocates. Every interval the listener receives the metrics collected since the
+ * previous delivery, on the UI thread; the metrics object is reused and reset right after the
+ * listener returns, so copy out whatever you need to keep.
+ */
+public class ProgressBarLayoutMetrics {
+
+    /**
+     * Receives the metrics of a {@link com.alterego.progressbarlayout.ProgressBarLayoutView}.
+     */
+    public interface Listener {
+        /**
+         * @param view    view the metrics were collected on
+         * @param metrics metrics collected since the previous call, only valid during the call
+         */
+        void onMetrics(ProgressBarLayoutView view, ProgressBarLayoutMetrics metrics);
+    }
+
+    /**
+     * Histogram of durations with power-of-two microsecond buckets: bucket 0 holds durations under
+     * 1us, bucket i the ones between 2^(i-1) and 2^i us, and the last bucket everything longer.
+     */
+    public static class Histogram {
+
+        public static final int BUCKET_COUNT = 24;
+
+        private final long[] mBuckets = new long[BUCKET_COUNT];
+        private long mCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+
+        void record(long nanos) {
+            if (nanos < 0)
+                nanos = 0;
+            long micros = nanos / 1000;
+            int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+            mBuckets[bucket]++;
+            mCount++;
+            mTotalNanos += nanos;
+            if (nanos > mMaxNanos)
+                mMaxNanos = nanos;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++)
+                mBuckets[i] = 0;
+            mCount = 0;
+            mTotalNanos = 0;
+            mMaxNanos = 0;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * @param bucket bucket index, between 0 and {@link #BUCKET_COUNT} - 1
+         * @return number of samples in the bucket
+         */
+        public long getBucketCount(int bucket) {
+            return mBuckets[bucket];
+        }
+
+        /**
+         * @param bucket bucket index, between 0 and {@link #BUCKET_COUNT} - 1
+         * @return upper bound of the bucket in microseconds ({@link Long#MAX_VALUE} for the last one)
+         */
+        public static long getBucketUpperBoundMicros(int bucket) {
+            return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+        }
+
+        public long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        public long getMeanNanos() {
+            return mCount == 0 ? 0 : mTotalNanos / mCount;
+        }
+
+        /**
+         * @param percentile percentile, between 0 and 100
+         * @return upper bound in microseconds of the bucket the percentile falls into, 0 without samples
+         */
+        public long getPercentileMicros(double percentile) {
+            if (mCount == 0)
+                return 0;
+            long rank = (long) Math.ceil(mCount * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank && seen > 0)
+                    return getBucketUpperBoundMicros(i);
+            }
+            return getBucketUpperBoundMicros(BUCKET_COUNT - 1);
+        }
+    }
+
+    private final Histogram mDrawTime = new Histogram();
+    private final Histogram mFormatTime = new Histogram();
+    private final Histogram mUpdateLatency = new Histogram();
+    private long mFrameCount;
+    private long mLateFrameCount;
+    private long mSkippedFrameCount;
+    private long mRetargetCount;
+    private long mCancellationCount;
+    private long mIntervalStartMillis;
+    private long mIntervalEndMillis;
+
+    /**
+     * @return duration of {@link ProgressBarLayoutView#onDraw(android.graphics.Canvas)}
+     */
+    public Histogram getDrawTime() {
+        return mDrawTime;
+    }
+
+    /**
+     * @return time spent in {@link ProgressBarLayoutView.IProgressStringFormatter#formatProgressString}
+     */
+    public Histogram getFormatTime() {
+        return mFormatTime;
+    }
+
+    /**
+     * @return latency from a progress change (setProgress or a posted progress being applied) to
+     * the first draw after it
+     */
+    public Histogram getUpdateLatency() {
+        return mUpdateLatency;
+    }
+
+    /**
+     * @return number of animation frames
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return number of animation frames that arrived later than one and a half frame intervals
+     * after the previous one
+     */
+    public long getLateFrameCount() {
+        return mLateFrameCount;
+    }
+
+    /**
+     * @return number of frame intervals without an animation frame while animating
+     */
+    public long getSkippedFrameCount() {
+        return mSkippedFrameCount;
+    }
+
+    /**
+     * @return number of progress changes that replaced the target of a running animation
+     */
+    public long getRetargetCount() {
+        return mRetargetCount;
+    }
+
+    /**
+     * @return number of running animations that were cancelled
+     */
+    public long getCancellationCount() {
+        return mCancellationCount;
+    }
+
+    /**
+     * @return start of the interval the metrics were collected in, in
+     * {@link android.os.SystemClock#uptimeMillis()} time base
+     */
+    public long getIntervalStartMillis() {
+        return mIntervalStartMillis;
+    }
+
+    /**
+     * @return end of the interval the metrics were collected in, in
+     * {@link android.os.SystemClock#uptimeMillis()} time base
+     */
+    public long getIntervalEndMillis() {
+        return mIntervalEndMillis;
+    }
+
+    void recordDrawTime(long nanos) {
+        mDrawTime.record(nanos);
+    }
+
+    void recordFormatTime(long nanos) {
+        mFormatTime.record(nanos);
+    }
+
+    void recordUpdateLatency(long nanos) {
+        mUpdateLatency.record(nanos);
+    }
+
+    /**
+     * @param frameDelta    time since the previous animation frame, 0 for the first frame of an animation
+     * @param frameInterval expected time between frames
+     */
+    void recordFrame(long frameDelta, long frameInterval) {
+        mFrameCount++;
+        if (frameInterval > 0 && frameDelta * 2 > frameInterval * 3) {
+            mLateFrameCount++;
+            mSkippedFrameCount += (frameDelta + frameInterval / 2) / frameInterval - 1;
+        }
+    }
+
+    void recordRetarget() {
+        mRetargetCount++;
+    }
+
+    void recordCancellation() {
+        mCancellationCount++;
+    }
+
+    void startInterval(long nowMillis) {
+        mDrawTime.reset();
+        mFormatTime.reset();
+        mUpdateLatency.reset();
+        mFrameCount = 0;
+        mLateFrameCount = 0;
+        mSkippedFrameCount = 0;
+        mRetargetCount = 0;
+        mCancellationCount = 0;
+        mIntervalStartMillis = nowMillis;
+        mIntervalEndMillis = nowMillis;
+    }
+
+    void endInterval(long nowMillis) {
+        mIntervalEndMillis = nowMillis;
+    }
+}
@@ -0,0 +1,505 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.View;
+
+import com.alterego.progressbarlayout.engine.ProgressEngine;
+import com.alterego.progressbarlayout.engine.ProgressLabelFormat;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Progress bar view showing many progresses at once (parallel transfers, for example), each one as
+ * a circle and a label in its own cell of a grid, all drawn in one pass with shared paints and a
+ * shared label cache.
+ * <p/>
+ * A track is a few entries in primitive arrays rather than a view: its progress can be set by index
+ * from any thread with {@link #setTrackProgress(int, long)}, the values are read once per frame on
+ * the UI thread and every track animates to its own value in the same frame callback.
+ */
+public class ProgressBarLayoutMultiTrackView extends View {
+
+    private static final String TAG = "ProgressBarLayoutMultiTrackView";
+    private static final int STEP_DURATION_IN_MS = 10;
+    private static final long DEFAULT_MAX_PROGRESS = 100;
+    private static final boolean DEBUG_LOGGING = false;
+
+    private static final float TEXTPAINT_SPACING_MULT = 1.0f;
+    private static final float TEXTPAINT_SPACING_ADD = 0.0f;
+
+    private static final Handler sMainThreadHandler = new Handler(Looper.getMainLooper());
+
+    private int mTrackCount;
+    private int mColumns;
+    private int mStepDuration;
+    private int mMaxAnimationDuration;
+    private float mMaxProgressSpeed;
+
+    //written by setTrackProgress from any thread, read at most once per frame on the UI thread
+    private volatile AtomicLongArray mPostedProgress;
+    private volatile AtomicLongArray mPostedMaxProgress;
+    private final AtomicBoolean mUpdatePending = new AtomicBoolean();
+
+    //track state, confined to the UI thread; a track is animating while its start time isn't -1
+    private long[] mTargetProgress;
+    private long[] mMaxProgress;
+    private double[] mStartProgress;
+    private long[] mStartTime;
+    private long[] mDuration;
+    private double[] mProgress;
+    private long[] mLabelProgress;
+    private float[] mRadius;
+
+    //grid geometry, computed when the size changes
+    private int mCellWidth;
+    private int mCellHeight;
+    private float mEndRadius;
+
+    private float mBeginningProgressSize;
+    private String mTextProgressString;
+    private ProgressLabelFormat mLabelFormat;
+    private final ProgressLabelCache mLabelCache = new ProgressLabelCache();
+    private Paint mProgressCirclePaint;
+    private TextPaint mTextPaint;
+    private final Paint.FontMetricsInt mLabelFontMetrics = new Paint.FontMetricsInt();
+
+    private final Rect mCellRect = new Rect();
+    private final Rect mDirtyRect = new Rect();
+    private final TrackAnimator mTrackAnimator = new TrackAnimator();
+    //the track animator is only registered with the ticker while the view is attached
+    private boolean mAttachedToWindow = false;
+
+    public ProgressBarLayoutMultiTrackView(final Context context) {
+        super(context);
+        init(context, null);
+    }
+
+    public ProgressBarLayoutMultiTrackView(final Context context,
+                                           final AttributeSet attrs) {
+        super(context, attrs);
+        init(context, attrs);
+    }
+
+    public ProgressBarLayoutMultiTrackView(final Context context,
+                                           final AttributeSet attrs, final int defStyle) {
+        super(context, attrs, defStyle);
+        init(context, attrs);
+    }
+
+    private void init(final Context context, AttributeSet attrs) {
+        int progressCircleColor;
+        int textProgressColor;
+        float textSize;
+        int trackCount;
+
+        TypedArray a = context.getTheme().obtainStyledAttributes(attrs,
+                R.styleable.ProgressBarLayoutMultiTrackView, 0, 0);
+        try {
+            trackCount = a.getInteger(R.styleable.ProgressBarLayoutMultiTrackView_trackCount, 1);
+            mColumns = a.getInteger(R.styleable.ProgressBarLayoutMultiTrackView_trackColumns, 0);
+            mBeginningProgressSize = a.getDimension(R.styleable.ProgressBarLayoutMultiTrackView_beginningProgressSize, 0.0f);
+            progressCircleColor = a.getColor(R.styleable.ProgressBarLayoutMultiTrackView_progressCircleColor, 0xff666666);
+            textSize = a.getDimension(R.styleable.ProgressBarLayoutMultiTrackView_textProgressSize, 24.0f);
+            textProgressColor = a.getColor(R.styleable.ProgressBarLayoutMultiTrackView_textProgressColor, 0xff000000);
+            mTextProgressString = a.getString(R.styleable.ProgressBarLayoutMultiTrackView_textProgressString);
+            mStepDuration = a.getInteger(R.styleable.ProgressBarLayoutMultiTrackView_stepDurationInMs, STEP_DURATION_IN_MS);
+            mMaxAnimationDuration = a.getInteger(R.styleable.ProgressBarLayoutMultiTrackView_maxAnimationDurationInMs, 0);
+            mMaxProgressSpeed = a.getFloat(R.styleable.ProgressBarLayoutMultiTrackView_maxProgressSpeed, 0);
+        } finally {
+            a.recycle();
+        }
+
+        mLabelFormat = ProgressLabelFormat.compile(mTextProgressString);
+
+        mProgressCirclePaint = new Paint();
+        mProgressCirclePaint.setColor(progressCircleColor);
+        mProgressCirclePaint.setFlags(Paint.ANTI_ALIAS_FLAG);
+        mProgressCirclePaint.setStyle(Paint.Style.FILL);
+        mTextPaint = new TextPaint();
+        mTextPaint.setTextSize(textSize);
+        mTextPaint.setAntiAlias(true);
+        mTextPaint.setColor(textProgressColor);
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+
+        setTrackCount(trackCount);
+    }
+
+    /**
+     * Sets the number of tracks, resetting all of them to 0 with the default maximum of 100. Must be
+     * called on the UI thread, and not while other threads are setting track progress.
+     *
+     * @param trackCount number of tracks
+     */
+    public void setTrackCount(int trackCount) {
+        mTrackCount = Math.max(0, trackCount);
+        mTargetProgress = new long[mTrackCount];
+        mMaxProgress = new long[mTrackCount];
+        mStartProgress = new double[mTrackCount];
+        mStartTime = new long[mTrackCount];
+        mDuration = new long[mTrackCount];
+        mProgress = new double[mTrackCount];
+        mLabelProgress = new long[mTrackCount];
+        mRadius = new float[mTrackCount];
+
+        AtomicLongArray postedMaxProgress = new AtomicLongArray(mTrackCount);
+        for (int i = 0; i < mTrackCount; i++) {
+            mMaxProgress[i] = DEFAULT_MAX_PROGRESS;
+            mStartTime[i] = -1;
+            mRadius[i] = mBeginningProgressSize;
+            postedMaxProgress.set(i, DEFAULT_MAX_PROGRESS);
+        }
+        mPostedMaxProgress = postedMaxProgress;
+        mPostedProgress = new AtomicLongArray(mTrackCount);
+
+        computeGrid();
+        requestLayout();
+        invalidate();
+    }
+
+    public int getTrackCount() {
+        return mTrackCount;
+    }
+
+    /**
+     * Sets the number of columns of the grid of tracks.
+     *
+     * @param columns number of columns, 0 (default) for a square-ish grid
+     */
+    public void setTrackColumns(int columns) {
+        mColumns = columns;
+        computeGrid();
+        refreshRadii();
+        invalidate();
+    }
+
+    /**
+     * Sets the progress of a track. Can be called from any thread: it only stores the value, which
+     * is read at the next frame, so calling it more than once per frame costs nothing more.
+     *
+     * @param track    track index
+     * @param progress progress to be set, between 0 and the track's max progress
+     */
+    public void setTrackProgress(int track, long progress) {
+        mPostedProgress.set(track, progress);
+        requestUpdate();
+    }
+
+    /**
+     * Sets the progress and the maximum of a track. Can be called from any thread.
+     *
+     * @param track       track index
+     * @param progress    progress to be set, between 0 and max progress
+     * @param maxProgress maximum progress of the track (default is 100)
+     */
+    public void setTrackProgress(int track, long progress, long maxProgress) {
+        mPostedMaxProgress.set(track, maxProgress);
+        mPostedProgress.set(track, progress);
+        requestUpdate();
+    }
+
+    /**
+     * @param track track index
+     * @return the progress the track is animating (or has animated) to, as of the last frame
+     */
+    public long getTrackProgress(int track) {
+        return mTargetProgress[track];
+    }
+
+    /**
+     * The frame callback is posted only when no update is pending yet, so there's at most one post
+     * per frame however many tracks are updated.
+     */
+    private void requestUpdate() {
+        if (mUpdatePending.compareAndSet(false, true))
+            sMainThreadHandler.post(mTrackAnimator);
+    }
+
+    /**
+     * @param color color of the progress circles
+     */
+    public void setProgressColor(int color) {
+        mProgressCirclePaint.setColor(color);
+        invalidate();
+    }
+
+    /**
+     * @param color color of the progress texts
+     */
+    public void setProgressTextColor(int color) {
+        mTextPaint.setColor(color);
+        invalidate();
+    }
+
+    /**
+     * @param size size of the progress texts
+     */
+    public void setTextProgressSize(float size) {
+        mTextPaint.setTextSize(size);
+        invalidate();
+    }
+
+    /**
+     * @param progressString progress string, as the textProgressString parameter
+     */
+    public void setTextProgressString(String progressString) {
+        mTextProgressString = progressString;
+        mLabelFormat = ProgressLabelFormat.compile(mTextProgressString);
+        invalidate();
+    }
+
+    /**
+     * Sets the maximum duration of the animations of every track, see
+     * {@link com.alterego.progressbarlayout.ProgressBarLayoutView#setMaxAnimationDuration(int)}.
+     *
+     * @param durationInMs maximum duration of an animation, 0 (default) for no maximum
+     */
+    public void setMaxAnimationDuration(int durationInMs) {
+        mMaxAnimationDuration = durationInMs;
+    }
+
+    /**
+     * Sets the maximum animation speed of every track, see
+     * {@link com.alterego.progressbarlayout.ProgressBarLayoutView#setMaxProgressSpeed(float)}.
+     *
+     * @param unitsPerSecond maximum speed in progress units per second, 0 (default) for no cap
+     */
+    public void setMaxProgressSpeed(float unitsPerSecond) {
+        mMaxProgressSpeed = unitsPerSecond;
+    }
+
+    private void computeGrid() {
+        if (mTrackCount == 0)
+            return;
+
+        int columns = mColumns > 0 ? mColumns : (int) Math.ceil(Math.sqrt(mTrackCount));
+        int rows = (mTrackCount + columns - 1) / columns;
+        mCellWidth = (getWidth() - getPaddingLeft() - getPaddingRight()) / columns;
+        mCellHeight = (getHeight() - getPaddingTop() - getPaddingBottom()) / rows;
+        mEndRadius = (float) Math.sqrt((double) mCellWidth * mCellWidth + mCellHeight * mCellHeight) / 2;
+        if (DEBUG_LOGGING) Log.d(TAG, "computeGrid columns = " + columns + ", rows = " + rows);
+    }
+
+    private void getCellRect(int track, Rect rect) {
+        int columns = mColumns > 0 ? mColumns : (int) Math.ceil(Math.sqrt(mTrackCount));
+        int left = getPaddingLeft() + (track % columns) * mCellWidth;
+        int top = getPaddingTop() + (track / columns) * mCellHeight;
+        rect.set(left, top, left + mCellWidth, top + mCellHeight);
+    }
+
+    private void refreshRadii() {
+        for (int i = 0; i < mTrackCount; i++)
+            mRadius[i] = ProgressEngine.getRadius(mProgress[i], mMaxProgress[i], mBeginningProgressSize, mEndRadius);
+    }
+
+    /**
+     * Reads the posted progress of every track, starting an animation for the tracks whose target
+     * changed.
+     */
+    private void readPostedProgress(long now) {
+        AtomicLongArray postedProgress = mPostedProgress;
+        AtomicLongArray postedMaxProgress = mPostedMaxProgress;
+        for (int i = 0; i < mTrackCount; i++) {
+            long maxProgress = postedMaxProgress.get(i);
+            long target = Math.min(postedProgress.get(i), maxProgress);
+            if (maxProgress != mMaxProgress[i] || target != mTargetProgress[i]) {
+                mMaxProgress[i] = maxProgress;
+                mTargetProgress[i] = target;
+                mStartProgress[i] = mProgress[i];
+                mStartTime[i] = now;
+                mDuration[i] = ProgressEngine.getAnimationDuration(Math.abs(target - mProgress[i]),
+                        mStepDuration, mMaxAnimationDuration, mMaxProgressSpeed);
+            }
+        }
+    }
+
+    /**
+     * Advances the animating tracks to the frame time, adding the cells that changed to the dirty rect.
+     *
+     * @return true if some track is still animating
+     */
+    private boolean updateTracks(long now) {
+        boolean running = false;
+        for (int i = 0; i < mTrackCount; i++) {
+            if (mStartTime[i] == -1)
+                continue;
+
+            long elapsed = Math.max(0, now - mStartTime[i]);
+            long labelProgress;
+            if (elapsed >= mDuration[i]) {
+                mProgress[i] = mTargetProgress[i];
+                labelProgress = mTargetProgress[i];
+                mStartTime[i] = -1;
+            } else {
+                mProgress[i] = ProgressEngine.interpolate(mStartProgress[i], mTargetProgress[i], elapsed, mDuration[i]);
+                labelProgress = ProgressEngine.getLabelProgress(mStartProgress[i], mTargetProgress[i], mProgress[i]);
+                running = true;
+            }
+
+            float radius = ProgressEngine.getRadius(mProgress[i], mMaxProgress[i], mBeginningProgressSize, mEndRadius);
+            if (radius != mRadius[i] || labelProgress != mLabelProgress[i]) {
+                mRadius[i] = radius;
+                mLabelProgress[i] = labelProgress;
+                getCellRect(i, mCellRect);
+                mDirtyRect.union(mCellRect);
+            }
+        }
+        return running;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        computeGrid();
+        refreshRadii();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttachedToWindow = true;
+        //updates posted while detached are still pending, and interrupted animations go on
+        if (mUpdatePending.get() || isAnimating())
+            ProgressFrameTicker.getInstance().addFrameListener(mTrackAnimator);
+    }
+
+    private boolean isAnimating() {
+        for (int i = 0; i < mTrackCount; i++) {
+            if (mStartTime[i] != -1)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        mAttachedToWindow = false;
+        ProgressFrameTicker.getInstance().removeFrameListener(mTrackAnimator);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void onDraw(final Canvas canvas) {
+        if (mTrackCount == 0 || mCellWidth <= 0 || mCellHeight <= 0)
+            return;
+
+        mTextPaint.getFontMetricsInt(mLabelFontMetrics);
+        int labelHeight = mLabelFontMetrics.descent - mLabelFontMetrics.ascent;
+
+        for (int i = 0; i < mTrackCount; i++) {
+            getCellRect(i, mCellRect);
+            float radius = mRadius[i];
+
+            //once the circle covers its cell, a plain fill gives the same result for less work
+            if (radius >= mEndRadius) {
+                canvas.drawRect(mCellRect, mProgressCirclePaint);
+            } else if (radius > 0) {
+                canvas.save();
+                canvas.clipRect(mCellRect);
+                canvas.drawCircle(mCellRect.exactCenterX(), mCellRect.exactCenterY(), radius, mProgressCirclePaint);
+                canvas.restore();
+            }
+
+            drawLabel(canvas, i, labelHeight);
+        }
+    }
+
+    /**
+     * Simple progress strings are formatted into the shared char buffer and drawn directly, the
+     * others go through the label cache shared by all the tracks.
+     */
+    private void drawLabel(Canvas canvas, int track, int labelHeight) {
+        float centerX = mCellRect.exactCenterX();
+        float centerY = mCellRect.exactCenterY();
+
+        if (mLabelFormat != null) {
+            mLabelFormat.format(mLabelProgress[track]);
+            float baseline = centerY - labelHeight / 2 - mLabelFontMetrics.ascent;
+            canvas.drawText(mLabelFormat.getChars(), 0, mLabelFormat.length(), centerX, baseline, mTextPaint);
+        } else if (mTextProgressString != null) {
+            Layout label = getLabelLayout((int) Math.min(mLabelProgress[track], Integer.MAX_VALUE));
+            if (label != null) {
+                canvas.save();
+                canvas.translate(centerX, centerY - label.getHeight() / 2);
+                label.draw(canvas);
+                canvas.restore();
+            }
+        }
+    }
+
+    private Layout getLabelLayout(int progress) {
+        Layout label = mLabelCache.get(progress, mTextProgressString, mTextPaint, mCellWidth);
+        if (label != null)
+            return label;
+
+        try {
+            label = new StaticLayout(String.format(mTextProgressString, progress),
+                    mTextPaint,
+                    mCellWidth,
+                    Layout.Alignment.ALIGN_NORMAL,
+                    TEXTPAINT_SPACING_MULT,
+                    TEXTPAINT_SPACING_ADD,
+                    false);
+            mLabelCache.put(progress, mTextProgressString, mTextPaint, mCellWidth, label);
+        } catch (Exception e) {
+            Log.e(TAG, "getLabelLayout formatting error = " + e.toString());
+        }
+        return label;
+    }
+
+    /**
+     * Reads the posted progress and animates all the tracks, in a single frame callback for the
+     * whole view. It's posted to the UI thread by {@link #requestUpdate()} and stays registered
+     * while a track is animating and the view is attached; updates posted while the view is
+     * detached stay pending until it's attached again.
+     */
+    private class TrackAnimator implements Runnable, ProgressFrameTicker.FrameListener {
+
+        @Override
+        public void run() {
+            if (mAttachedToWindow)
+                ProgressFrameTicker.getInstance().addFrameListener(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeMillis) {
+            if (mUpdatePending.getAndSet(false))
+                readPostedProgress(frameTimeMillis);
+
+            mDirtyRect.setEmpty();
+            boolean running = updateTracks(frameTimeMillis);
+            if (!mDirtyRect.isEmpty())
+                invalidate(mDirtyRect);
+
+            if (!running)
+                ProgressFrameTicker.getInstance().removeFrameListener(this);
+        }
+    }
+}
@@ -19,18 +19,27 @@ package com.alterego.progressbarlayout;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
-import android.graphics.Paint;
 import android.graphics.Typeface;
-import android.os.AsyncTask;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.v4.view.ViewCompat;
 import android.text.Layout;
-import android.text.StaticLayout;
 import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
-import android.view.animation.AlphaAnimation;
+import android.view.WindowManager;
 import android.view.animation.Animation;
-import android.view.animation.AnimationUtils;
+
+import com.alterego.progressbarlayout.engine.ProgressEngine;
+import com.alterego.progressbarlayout.engine.ProgressRadiusCurve;
+import com.alterego.progressbarlayout.engine.ProgressTimeline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ProgressBarLayoutView extends View {
 
@@ -39,45 +48,106 @@ public class ProgressBarLayoutView extends View {
     private static final int STEP_DURATION_IN_MS = 10;
     private static final boolean DEBUG_LOGGING = false;
 
-    private static final float TEXTPAINT_SPACING_MULT = 1.0f;
-    private static final float TEXTPAINT_SPACING_ADD = 0.0f;
+    /**
+     * Labels are built as {@link android.text.Layout}s by the progress string formatter.
+     */
+    public static final int LABEL_RENDERER_LAYOUT = 0;
+    /**
+     * Numeric labels are drawn from a bitmap atlas of their glyphs, rasterized once per typeface
+     * and text size. Only used with the default formatter and simple progress strings (literal
+     * text, "%%" and a single "%d"), the others fall back to {@link #LABEL_RENDERER_LAYOUT}.
+     */
+    public static final int LABEL_RENDERER_GLYPH_ATLAS = 1;
+
+    private static final long DEFAULT_FRAME_INTERVAL_IN_MS = 16;
+    private static final int LAYER_BYTES_PER_PIXEL = 4;
+    private static final int NO_POSTED_PROGRESS = Integer.MIN_VALUE;
+    private static final Handler sMainThreadHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * When the view comes back after being hidden or detached, the progress animation continues
+     * from where it was paused.
+     */
+    public static final int HIDDEN_RESUME_CONTINUE = 0;
+    /**
+     * When the view comes back after being hidden or detached, it shows the target progress right
+     * away, without animating to it.
+     */
+    public static final int HIDDEN_RESUME_JUMP = 1;
 
-    private int mWidth = 0;
-    private int mHeight = 0;
-    private int mCenterX = 0;
-    private int mCenterY = 0;
-    private int mCurrentProgress = 0;
-    private String mTextProgressString;
+    //the progress state is per instance and confined to the UI thread: it is only changed from
+    //setProgress, reset, layout callbacks and the animation frame callbacks, and read in onDraw
+    private long mCurrentProgress = 0;
     private boolean mSizeChanged = false;
-    private int mFutureProgress = 0;
-    private Typeface mTypeface;
-
-    private Paint mProgressCirclePaint;
-    private Circle mProgressCircle;
-    private TextPaint mTextPaint;
-    private static int mSleepTime;
-    private static float mIncreaseStep;
-    private ProgressUpdateTask mUpdateTask;
-    private float mBeginningProgressSize;
-    private int mProgressCircleColor;
-    private int mTextProgressColor;
-    private float mTextSize;
-    private int mProgressMax = 100;
-
-    private Layout mTextToPrint;
+    private boolean mHasSize = false;
+
+    //renders the circle and the label, driven by the animation of the view
+    private ProgressBarLayoutDrawable mProgressDrawable;
+    private ProgressEngine mProgressEngine;
+    private final ProgressAnimator mProgressAnimator = new ProgressAnimator();
+    private boolean mAttachedToWindow = false;
+    private boolean mWindowVisible = false;
+    private boolean mAnimationVisible = false;
+    private int mHiddenResumeMode = HIDDEN_RESUME_CONTINUE;
+    private boolean mContinueAnimationOnRestore = false;
+
+    //asked for the update interval when an animation starts or resumes
+    private ProgressUpdatePolicy mUpdatePolicy = new SystemProgressUpdatePolicy();
+    private long mUpdateInterval = ProgressUpdatePolicy.FULL_FIDELITY;
+
+    //timeline being animated, null once a single progress is set
+    private ProgressTimeline mTimeline;
+    private int mNotifiedSegments;
+    private OnTimelineSegmentListener mOnTimelineSegmentListener;
+    //label template of the view, shown again once the timeline ends
+    private String mBaseProgressString;
+
+    //written by postProgress from any thread, consumed at most once per frame on the UI thread
+    private final AtomicInteger mPostedProgress = new AtomicInteger(NO_POSTED_PROGRESS);
+    private final AtomicLong mPostedProgressCount = new AtomicLong();
+    private final AtomicLong mCoalescedProgressCount = new AtomicLong();
+    private final PostedProgressReader mPostedProgressReader = new PostedProgressReader();
+
+    //sampled once per frame on the UI thread while set and the view is visible
+    private ProgressSource mProgressSource;
+    private final ProgressSourceSampler mProgressSourceSampler = new ProgressSourceSampler();
+
+    //performance metrics, only collected while a metrics listener is set
+    private ProgressBarLayoutMetrics mMetrics;
+    private ProgressBarLayoutMetrics.Listener mMetricsListener;
+    private long mMetricsInterval;
+    private long mFrameInterval = DEFAULT_FRAME_INTERVAL_IN_MS;
+    private long mLastAnimationFrameTime = 0;
+    private long mProgressChangeTime = 0;
+
+    //work counters, for harnesses checking what an animation costs
+    private int mAnimationFrameCount = 0;
+    private int mInvalidateCount = 0;
+
     private ProgressBarLayoutView instance;
 
+    //cross-animations are obtained from the CrossAnimationPool when they start, -1 is the default alpha
     private View mBeginningCrossAnimationView;
-    private Animation mBeginningProgressAnimation;
-    private Animation mBeginningInverseProgressAnimation;
+    private int mBeginningAnimationRes = -1;
+    private int mBeginningInverseAnimationRes = -1;
+    private int mBeginningAnimationDuration = ANIMATION_DURATION_IN_MS;
     private boolean mBeginningAnimationPerformed = false;
 
     private View mEndingCrossAnimationView;
-    private Animation mEndingProgressAnimation;
-    private Animation mEndingInverseProgressAnimation;
+    private int mEndingAnimationRes = -1;
+    private int mEndingInverseAnimationRes = -1;
+    private int mEndingAnimationDuration = ANIMATION_DURATION_IN_MS;
     private boolean mEndingAnimationPerformed = false;
 
-    private IProgressStringFormatter mProgressStringFormatter = new DefaultProgressStringFormatter();
+    //hardware layers held during the cross-animations
+    private boolean mCrossAnimationHardwareLayers = true;
+    //the two cross-fades can overlap, so each one tracks the layer of its cross view, and this view
+    //keeps its own layer while either of them runs
+    private View mBeginningLayerView;
+    private int mBeginningLayerPreviousType;
+    private View mEndingLayerView;
+    private int mEndingLayerPreviousType;
+    private int mPreviousLayerType;
 
     public ProgressBarLayoutView(final Context context) {
         super(context);
@@ -102,72 +172,151 @@ public class ProgressBarLayoutView extends View {
         TypedArray a = context.getTheme().obtainStyledAttributes(attrs,
                 R.styleable.ProgressBarLayoutView, 0, 0);
         try {
-            mBeginningProgressSize = a.getDimension(
-                    R.styleable.ProgressBarLayoutView_beginningProgressSize,
-                    0.0f);
-            mProgressCircleColor = a.getColor(
-                    R.styleable.ProgressBarLayoutView_progressCircleColor,
-                    0xff666666);
-            mTextSize = a.getDimension(
-                    R.styleable.ProgressBarLayoutView_textProgressSize,
-                    24.0f);
-            mTextProgressColor = a.getColor(
-                    R.styleable.ProgressBarLayoutView_textProgressColor,
-                    0xff000000);
-            mTextProgressString = a.getString(
-                    R.styleable.ProgressBarLayoutView_textProgressString);
-            mSleepTime = a.getInteger(R.styleable.ProgressBarLayoutView_stepDurationInMs, STEP_DURATION_IN_MS);
-
-
-            //beginning animation resources
+            mProgressDrawable = new ProgressBarLayoutDrawable();
+            mProgressDrawable.readAttributes(a);
+            mProgressEngine = new ProgressEngine(a.getInteger(R.styleable.ProgressBarLayoutView_stepDurationInMs, STEP_DURATION_IN_MS));
+            mProgressEngine.setMaxAnimationDuration(a.getInteger(R.styleable.ProgressBarLayoutView_maxAnimationDurationInMs, 0));
+            mProgressEngine.setMaxProgressSpeed(a.getFloat(R.styleable.ProgressBarLayoutView_maxProgressSpeed, 0));
+            mCrossAnimationHardwareLayers = a.getBoolean(R.styleable.ProgressBarLayoutView_crossAnimationHardwareLayers, true);
+            mHiddenResumeMode = a.getInt(R.styleable.ProgressBarLayoutView_hiddenResumeMode, HIDDEN_RESUME_CONTINUE);
+            mContinueAnimationOnRestore = a.getBoolean(R.styleable.ProgressBarLayoutView_continueAnimationOnRestore, false);
+
+
+            //beginning animation resources, loaded when the animation is first performed
             int begAnimRes = a.getResourceId(R.styleable.ProgressBarLayoutView_beginningProgressAnimation, -1);
             int begInvAnimRes = a.getResourceId(R.styleable.ProgressBarLayoutView_beginningInverseProgressAnimation, -1);
-            int begAnimDuration = a.getInteger(R.styleable.ProgressBarLayoutView_beginningProgressAnimationDurationInMs, ANIMATION_DURATION_IN_MS);
+            mBeginningAnimationDuration = a.getInteger(R.styleable.ProgressBarLayoutView_beginningProgressAnimationDurationInMs, ANIMATION_DURATION_IN_MS);
 
             if (begAnimRes != -1 && begInvAnimRes != -1) {
-                mBeginningProgressAnimation = AnimationUtils.loadAnimation(context, begAnimRes);
-                mBeginningInverseProgressAnimation = AnimationUtils.loadAnimation(context, begInvAnimRes);
-            } else {
-                mBeginningProgressAnimation = new AlphaAnimation(0.0f, 1.0f);
-                mBeginningInverseProgressAnimation = new AlphaAnimation(1.0f, 0.0f);
+                mBeginningAnimationRes = begAnimRes;
+                mBeginningInverseAnimationRes = begInvAnimRes;
             }
 
-            mBeginningProgressAnimation.setDuration(begAnimDuration);
-            mBeginningInverseProgressAnimation.setDuration(begAnimDuration);
-
-            //ending animation resources
+            //ending animation resources, loaded when the animation is first performed
             int endAnimRes = a.getResourceId(R.styleable.ProgressBarLayoutView_endingProgressAnimation, -1);
             int endInvAnimRes = a.getResourceId(R.styleable.ProgressBarLayoutView_endingInverseProgressAnimation, -1);
-            int endAnimDuration = a.getInteger(R.styleable.ProgressBarLayoutView_endingProgressAnimationDurationInMs, ANIMATION_DURATION_IN_MS);
+            mEndingAnimationDuration = a.getInteger(R.styleable.ProgressBarLayoutView_endingProgressAnimationDurationInMs, ANIMATION_DURATION_IN_MS);
 
-            if (begAnimRes != -1 && begInvAnimRes != -1) {
-                mEndingProgressAnimation = AnimationUtils.loadAnimation(context, endAnimRes);
-                mEndingInverseProgressAnimation = AnimationUtils.loadAnimation(context, endInvAnimRes);
-            } else {
-                mEndingProgressAnimation = new AlphaAnimation(1.0f, 0.0f);
-                mEndingInverseProgressAnimation = new AlphaAnimation(0.0f, 1.0f);
+            if (endAnimRes != -1 && endInvAnimRes != -1) {
+                mEndingAnimationRes = endAnimRes;
+                mEndingInverseAnimationRes = endInvAnimRes;
             }
 
-            mEndingProgressAnimation.setDuration(endAnimDuration);
-            mEndingInverseProgressAnimation.setDuration(endAnimDuration);
-
         } finally {
             a.recycle();
         }
 
+        mProgressDrawable.setCallback(this);
         setWidthHeightAndCenter();
+        mProgressEngine.pause(ProgressFrameTicker.getInstance().uptimeMillis());
+        mProgressAnimator.cancel();
 
-        mProgressCirclePaint = new Paint();
-        mProgressCirclePaint.setColor(mProgressCircleColor);
-        mProgressCirclePaint.setFlags(Paint.ANTI_ALIAS_FLAG);
-        mProgressCirclePaint.setStyle(Paint.Style.FILL);
-        mTextPaint = new TextPaint();
-        mTextPaint.setTextSize(mTextSize);
-        mTextPaint.setAntiAlias(true);
-        mTextPaint.setColor(mTextProgressColor);
-        mTextPaint.setTextAlign(Paint.Align.CENTER);
-        cancelUpdateTask();
+    }
 
+    /**
+     * Enables the collection of performance metrics (draw and formatter durations, update latency,
+     * late and skipped frames, retargets and cancellations), delivered to the listener on the UI
+     * thread every interval while the view is animating or drawing. Collecting the metrics doesn't
+     * allocate; when no listener is set nothing is collected.
+     *
+     * @param listener     listener receiving the metrics, null to stop collecting them
+     * @param intervalInMs minimum time between two deliveries of the metrics
+     */
+    public void setMetricsListener(ProgressBarLayoutMetrics.Listener listener, long intervalInMs) {
+        mMetricsListener = listener;
+        mMetricsInterval = intervalInMs;
+        mProgressChangeTime = 0;
+        mLastAnimationFrameTime = 0;
+        if (listener == null) {
+            mMetrics = null;
+            mProgressDrawable.setMetrics(null);
+            return;
+        }
+
+        if (mMetrics == null)
+            mMetrics = new ProgressBarLayoutMetrics();
+        mProgressDrawable.setMetrics(mMetrics);
+        mMetrics.startInterval(ProgressFrameTicker.getInstance().uptimeMillis());
+
+        WindowManager windowManager = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+        float refreshRate = windowManager != null ? windowManager.getDefaultDisplay().getRefreshRate() : 0;
+        mFrameInterval = refreshRate > 0 ? Math.round(1000 / refreshRate) : DEFAULT_FRAME_INTERVAL_IN_MS;
+    }
+
+    private void deliverMetricsIfDue(long nowMillis) {
+        if (mMetrics != null && nowMillis - mMetrics.getIntervalStartMillis() >= mMetricsInterval) {
+            mMetrics.endInterval(nowMillis);
+            mMetricsListener.onMetrics(this, mMetrics);
+            //the listener could have removed itself
+            if (mMetrics != null)
+                mMetrics.startInterval(nowMillis);
+        }
+    }
+
+    /**
+     * Sets what happens to a running progress animation when the view comes back after being
+     * detached, hidden ({@link View#GONE} or {@link View#INVISIBLE}, itself or one of its parents)
+     * or in a hidden window. While the view isn't visible the animation is paused and costs nothing.
+     *
+     * @param mode {@link #HIDDEN_RESUME_CONTINUE} (default) or {@link #HIDDEN_RESUME_JUMP}
+     */
+    public void setHiddenResumeMode(int mode) {
+        mHiddenResumeMode = mode;
+    }
+
+    /**
+     * Sets what the view shows when its state is restored (after a configuration change, for
+     * example) while a progress animation was running: by default it shows the target progress right
+     * away, with this set it continues the animation from where it was.
+     *
+     * @param continueAnimation true to continue the running animation on restore
+     */
+    public void setContinueAnimationOnRestore(boolean continueAnimation) {
+        mContinueAnimationOnRestore = continueAnimation;
+    }
+
+    /**
+     * Sets the policy deciding how closely the progress animations are followed: on every frame, at
+     * a lower frame rate or jumping to the target. The policy is asked when an animation starts and
+     * when it resumes; by default it's a {@link com.alterego.progressbarlayout.SystemProgressUpdatePolicy},
+     * following the system animator duration scale and battery saver mode.
+     *
+     * @param policy update policy, null to always update on every frame
+     */
+    public void setUpdatePolicy(ProgressUpdatePolicy policy) {
+        mUpdatePolicy = policy;
+        if (mProgressEngine.isRunning())
+            mProgressAnimator.updateInterval();
+    }
+
+    /**
+     * @return current update policy, null if the animations are updated on every frame
+     */
+    public ProgressUpdatePolicy getUpdatePolicy() {
+        return mUpdatePolicy;
+    }
+
+    /**
+     * Pauses or resumes the animation according to the attachment and visibility of the view.
+     */
+    private void updateAnimationVisibility() {
+        //visibility callbacks can come from the super constructor, before the fields are initialized
+        if (mProgressAnimator == null || mProgressEngine == null)
+            return;
+
+        boolean visible = mAttachedToWindow && mWindowVisible && isShown();
+        if (visible == mAnimationVisible)
+            return;
+
+        mAnimationVisible = visible;
+        if (DEBUG_LOGGING) Log.d(TAG, "updateAnimationVisibility visible = " + visible);
+        if (visible) {
+            mProgressAnimator.resume();
+            mProgressSourceSampler.register();
+        } else {
+            mProgressAnimator.pause();
+            mProgressSourceSampler.unregister();
+        }
     }
 
     /**
@@ -176,11 +325,19 @@ public class ProgressBarLayoutView extends View {
      * @param font typeface for the label
      */
     public void setTypeface(Typeface font) {
-        mTypeface = font;
-        if (mTextPaint != null)
-            mTextPaint.setTypeface(font);
-        requestLayout();
-        invalidate();
+        edit().setTypeface(font).apply();
+    }
+
+    /**
+     * Starts a style transaction: the changes made through the returned
+     * {@link com.alterego.progressbarlayout.ProgressBarLayoutView.StyleEditor} are applied together
+     * by {@link com.alterego.progressbarlayout.ProgressBarLayoutView.StyleEditor#apply()}, with a
+     * single label and radius update, at most one relayout and one redraw.
+     *
+     * @return style editor for this view
+     */
+    public StyleEditor edit() {
+        return new StyleEditor();
     }
 
     /**
@@ -188,11 +345,17 @@ public class ProgressBarLayoutView extends View {
      */
 
     public void reset() {
+        mProgressAnimator.cancel();
+        mPostedProgress.set(NO_POSTED_PROGRESS);
+        endTimeline();
+        mProgressEngine.jumpTo(0);
         setCurrentProgress(0);
-        mTextToPrint = mProgressStringFormatter.formatProgressString(mCurrentProgress, mTextProgressString, mTextPaint, mWidth, getPaddingLeft(), getPaddingRight());
-        mProgressCircle.radius = mBeginningProgressSize;
+        mProgressDrawable.setAnimatedProgress(0, 0);
         mBeginningAnimationPerformed = false;
         mEndingAnimationPerformed = false;
+        //a cross-animation cut short doesn't get to release its layers
+        releaseHardwareLayers(false);
+        releaseHardwareLayers(true);
         invalidate();
     }
 
@@ -202,12 +365,12 @@ public class ProgressBarLayoutView extends View {
      * @param size size of the beginning progress circle
      */
     public void setBeginningProgressSize(int size) {
-        mBeginningProgressSize = size;
-        mIncreaseStep = (getHalfDiagonal() - mBeginningProgressSize) / getMaxProgress();
+        edit().setBeginningProgressSize(size).apply();
     }
 
-    private int getHalfDiagonal() {
-        return (int) Math.sqrt((double) mWidth * mWidth + mHeight * mHeight) / 2;
+    private void refreshRadius() {
+        if (mHasSize)
+            setAnimatedProgress(mProgressEngine.getProgress(), mCurrentProgress);
     }
 
     /**
@@ -216,7 +379,7 @@ public class ProgressBarLayoutView extends View {
      * @param color color of the progress text
      */
     public void setProgressTextColor(int color) {
-        mTextProgressColor = color;
+        edit().setProgressTextColor(color).apply();
     }
 
     /**
@@ -225,7 +388,7 @@ public class ProgressBarLayoutView extends View {
      * @param color color of the progress bar circle
      */
     public void setProgresColor(int color) {
-        mProgressCircleColor = color;
+        edit().setProgressColor(color).apply();
     }
 
     /**
@@ -234,16 +397,52 @@ public class ProgressBarLayoutView extends View {
      * @param size size of the progress bar text
      */
     public void setTextProgressSize(int size) {
-        mTextSize = size;
+        edit().setTextProgressSize(size).apply();
+    }
+
+    /**
+     * Bounds the duration of every progress animation: by default an animation takes
+     * stepDurationInMs for each progress unit, so large jumps (or large maximums) take a long time.
+     * With a maximum duration, longer animations are sped up to finish in time, skipping the
+     * intermediate labels they don't have time to show.
+     *
+     * @param durationInMs maximum duration of a progress animation, 0 (default) for no maximum
+     */
+    public void setMaxAnimationDuration(int durationInMs) {
+        mProgressEngine.setMaxAnimationDuration(durationInMs);
+    }
+
+    /**
+     * Sets how the circle radius grows with the progress, {@link ProgressRadiusCurve#LINEAR}
+     * (default), {@link ProgressRadiusCurve#AREA_LINEAR} (the revealed area grows with the progress),
+     * {@link ProgressRadiusCurve#EASE_OUT} or a custom interpolator. Non linear curves are
+     * precomputed once into a lookup table, shared by the views with the same size, maximum and
+     * interpolator.
+     *
+     * @param interpolator radius interpolator
+     */
+    public void setRadiusInterpolator(ProgressRadiusCurve.Interpolator interpolator) {
+        mProgressDrawable.setRadiusInterpolator(interpolator);
     }
 
     /**
-     * Gets the progress bar maximum value (default is 100)
+     * Caps the speed of the progress animations. The cap wins over the maximum animation duration,
+     * so with both set a long jump can take longer than the maximum duration.
+     *
+     * @param unitsPerSecond maximum number of progress units per second, 0 (default) for no cap
+     */
+    public void setMaxProgressSpeed(float unitsPerSecond) {
+        mProgressEngine.setMaxProgressSpeed(unitsPerSecond);
+    }
+
+    /**
+     * Gets the progress bar maximum value (default is 100). Maximums set with
+     * {@link #setProgress(long, long)} that don't fit an int are returned as {@link Integer#MAX_VALUE}.
      *
      * @return maximum value of progress
      */
     public int getMaxProgress() {
-        return mProgressMax;
+        return (int) Math.min(mProgressEngine.getMaxProgress(), Integer.MAX_VALUE);
     }
 
     /**
@@ -252,8 +451,15 @@ public class ProgressBarLayoutView extends View {
      * @param maxProgress maximum progress (default is 100)
      */
     public void setMaxProgress(int maxProgress) {
-        mProgressMax = maxProgress;
-        mIncreaseStep = (getHalfDiagonal() - mBeginningProgressSize) / getMaxProgress();
+        updateMaxProgress(maxProgress);
+    }
+
+    private void updateMaxProgress(long maxProgress) {
+        if (mProgressEngine.getMaxProgress() != maxProgress) {
+            mProgressEngine.setMaxProgress(maxProgress);
+            mProgressDrawable.setMaxProgress(maxProgress);
+            refreshRadius();
+        }
     }
 
     /**
@@ -287,28 +493,55 @@ public class ProgressBarLayoutView extends View {
 
 
     /**
-     * Set the progress bar progress.
+     * Set the progress bar progress. Must be called on the UI thread, use {@link #postProgress(int)}
+     * from other threads.
      *
      * @param progress progress to be set, between 0 and max progress.
      */
     public void setProgress(int progress) {
-        if (progress > getMaxProgress())
-            progress = getMaxProgress();
+        updateProgress(progress);
+    }
 
-        mFutureProgress = progress;
+    /**
+     * Set the progress bar progress and maximum, for progress that doesn't fit an int (byte counts,
+     * for example). Must be called on the UI thread.
+     * <p/>
+     * The label shows the progress value itself, so with large maximums you'll probably want a custom
+     * {@link com.alterego.progressbarlayout.ProgressBarLayoutView.IProgressStringFormatter}; note
+     * that it receives the progress clamped to the int range.
+     *
+     * @param progress    progress to be set, between 0 and max progress.
+     * @param maxProgress maximum progress
+     */
+    public void setProgress(long progress, long maxProgress) {
+        updateMaxProgress(maxProgress);
+        updateProgress(progress);
+    }
 
-        if ((mCurrentProgress != mFutureProgress || mSizeChanged)) {
-            mSizeChanged = false;
-            int starting_progress = mCurrentProgress;
+    private void updateProgress(long progress) {
+        updateProgress(progress, Long.MAX_VALUE);
+    }
 
-            if (mUpdateTask != null) {
-                if (DEBUG_LOGGING) Log.w(TAG, "setProgress cancelling task");
-                mUpdateTask.cancel(true);
-            }
+    /**
+     * @param maxDuration maximum duration of the animation to the progress in ms, Long.MAX_VALUE to
+     *                    plan it from the step duration only
+     */
+    private void updateProgress(long progress, long maxDuration) {
+        progress = mProgressEngine.clamp(progress);
+
+        if (mMetrics != null) {
+            if (mProgressEngine.isRunning() && mProgressEngine.getTargetProgress() != progress)
+                mMetrics.recordRetarget();
+            if (mProgressChangeTime == 0)
+                mProgressChangeTime = System.nanoTime();
+        }
+
+        if ((mProgressEngine.getProgress() != progress || mSizeChanged)) {
+            mSizeChanged = false;
 
-            if (DEBUG_LOGGING) Log.d(TAG, "setProgress progress = " + mFutureProgress);
-            mUpdateTask = new ProgressUpdateTask(this);
-            mUpdateTask.execute(starting_progress, mFutureProgress);
+            if (DEBUG_LOGGING) Log.d(TAG, "setProgress progress = " + progress);
+            endTimeline();
+            mProgressAnimator.start(progress, maxDuration);
             performBeginningAnimation();
         } else {
             if (DEBUG_LOGGING)
@@ -316,43 +549,225 @@ public class ProgressBarLayoutView extends View {
         }
     }
 
-    private void cancelUpdateTask() {
-        if (mUpdateTask != null)
-            mUpdateTask.cancel(true);
+    /**
+     * Animates the segments of the timeline one after the other as a single animation, from the
+     * current progress: each segment reaches its target in its own time or at its own speed, and
+     * shows its own label template if it has one (the view's template otherwise). Setting a progress
+     * stops the timeline, and the view's template is shown again once the timeline ends or stops.
+     * Must be called on the UI thread, and the timeline must not be changed while it's animated.
+     *
+     * @param timeline timeline to animate, empty timelines are ignored
+     */
+    public void setProgressTimeline(ProgressTimeline timeline) {
+        if (timeline.getSegmentCount() == 0)
+            return;
+
+        if (mMetrics != null) {
+            if (mProgressEngine.isRunning())
+                mMetrics.recordRetarget();
+            if (mProgressChangeTime == 0)
+                mProgressChangeTime = System.nanoTime();
+        }
+
+        if (DEBUG_LOGGING) Log.d(TAG, "setProgressTimeline segments = " + timeline.getSegmentCount());
+        if (mTimeline == null)
+            mBaseProgressString = mProgressDrawable.getTextProgressString();
+        mTimeline = timeline;
+        mNotifiedSegments = 0;
+        applySegmentLabel(0);
+        mProgressAnimator.startTimeline(timeline);
+        performBeginningAnimation();
     }
 
-    private void setCurrentProgress(int progress) {
+    /**
+     * Sets the listener called each time the animation reaches the target of a timeline segment.
+     *
+     * @param listener listener, null to remove it
+     */
+    public void setOnTimelineSegmentListener(OnTimelineSegmentListener listener) {
+        mOnTimelineSegmentListener = listener;
+    }
+
+    /**
+     * Calls the listener for the segments completed since the last call, and switches to the label
+     * template of the segment being animated.
+     */
+    private void dispatchTimelineSegments() {
+        ProgressTimeline timeline = mTimeline;
+        int completed = mProgressEngine.getCompletedSegments();
+        if (mNotifiedSegments >= completed)
+            return;
+
+        //the listener can set a progress or another timeline, which ends this one
+        while (mNotifiedSegments < completed && mTimeline == timeline) {
+            int segment = mNotifiedSegments++;
+            if (mOnTimelineSegmentListener != null)
+                mOnTimelineSegmentListener.onSegmentEnd(this, segment);
+        }
+
+        if (mTimeline != timeline)
+            return;
+        if (completed < timeline.getSegmentCount())
+            applySegmentLabel(completed);
+        else
+            endTimeline();
+    }
+
+    /**
+     * Shows the label template of the segment, or the template of the view if the segment has none.
+     */
+    private void applySegmentLabel(int segment) {
+        String progressString = mTimeline.getProgressString(segment);
+        mProgressDrawable.setTextProgressString(progressString != null ? progressString : mBaseProgressString);
+    }
+
+    /**
+     * Drops the timeline, if any, and puts the label template of the view back.
+     */
+    private void endTimeline() {
+        if (mTimeline == null)
+            return;
+
+        mTimeline = null;
+        mProgressDrawable.setTextProgressString(mBaseProgressString);
+    }
+
+    /**
+     * Set the progress bar progress from any thread. The value is stored and read by the view at the
+     * next frame, so when many values are posted within the same frame only the latest one is
+     * animated to and the others are counted as coalesced.
+     *
+     * @param progress progress to be set, between 0 and max progress.
+     */
+    public void postProgress(int progress) {
+        mPostedProgressCount.incrementAndGet();
+        if (mPostedProgress.getAndSet(progress) != NO_POSTED_PROGRESS) {
+            mCoalescedProgressCount.incrementAndGet();
+        } else {
+            sMainThreadHandler.post(mPostedProgressReader);
+        }
+    }
+
+    /**
+     * Binds the progress bar to a source of progress, such as a
+     * {@link com.alterego.progressbarlayout.CountingInputStream} or a
+     * {@link com.alterego.progressbarlayout.CountingByteChannel}: while the view is visible it reads
+     * the source once per frame and animates to its progress (and maximum, if the source knows it),
+     * until the source reaches its maximum or reports it's finished. Each sample is animated within a frame, whatever the
+     * step duration, so the circle follows the source closely. The work updating the source never
+     * posts anything to the UI thread. Must be called on the UI thread.
+     *
+     * @param source source of progress, null to stop sampling
+     */
+    public void setProgressSource(ProgressSource source) {
+        mProgressSourceSampler.unregister();
+        mProgressSource = source;
+        mProgressSourceSampler.register();
+    }
+
+    /**
+     * @return number of {@link #postProgress(int)} calls since the view was created or the counters were reset
+     */
+    public long getPostedProgressCount() {
+        return mPostedProgressCount.get();
+    }
+
+    /**
+     * @return number of {@link #postProgress(int)} values that were replaced by a later value before
+     * the view read them
+     */
+    public long getCoalescedProgressCount() {
+        return mCoalescedProgressCount.get();
+    }
+
+    /**
+     * Resets the {@link #postProgress(int)} counters to 0.
+     */
+    public void resetPostedProgressCounters() {
+        mPostedProgressCount.set(0);
+        mCoalescedProgressCount.set(0);
+    }
+
+    private void setCurrentProgress(long progress) {
         if (DEBUG_LOGGING) Log.v(TAG, "setCurrentProgress progress = " + progress);
         mCurrentProgress = progress;
 
-        if (mCurrentProgress == mProgressMax)
+        if (mCurrentProgress == mProgressEngine.getMaxProgress())
             performEndingAnimation();
     }
 
+    /**
+     * Moves the progress bar to the (possibly fractional) animated progress, redrawing only the area
+     * that changed.
+     */
+    private void setAnimatedProgress(double progress, long labelProgress) {
+        if (labelProgress != mCurrentProgress)
+            setCurrentProgress(labelProgress);
+
+        if (mProgressDrawable.setAnimatedProgress(progress, labelProgress)) {
+            mInvalidateCount++;
+            invalidate(mProgressDrawable.getDirtyRect());
+        }
+    }
 
-    private void setWidthHeightAndCenter() {
+    /**
+     * @return number of animation frames the view has processed
+     */
+    int getAnimationFrameCount() {
+        return mAnimationFrameCount;
+    }
 
-        int left = getLeft() + getPaddingLeft();
-        int right = getRight() - getPaddingRight();
-        int top = getTop() + getPaddingTop();
-        int bottom = getBottom() - getPaddingBottom();
-
-        if (DEBUG_LOGGING) Log.i(TAG, "left = " + left + ", right = " + right);
-        if (DEBUG_LOGGING) Log.i(TAG, "top = " + top + ", bottom = " + bottom);
-        mWidth = right - left;
-        mHeight = bottom - top;
-        if (DEBUG_LOGGING) Log.i(TAG, "mWidth = " + mWidth + ", mHeight = " + mHeight);
-        mCenterX = mWidth / 2;
-        mCenterY = mHeight / 2;
-        if (DEBUG_LOGGING) Log.i(TAG, "mCenterX = " + mCenterX + ", mCenterY = " + mCenterY);
-        mIncreaseStep = (getHalfDiagonal() - mBeginningProgressSize) / getMaxProgress();
-        if (DEBUG_LOGGING)
-            Log.i(TAG, "mIncreaseStep = " + mIncreaseStep + ", mSleepTime = " + mSleepTime);
+    /**
+     * @return number of invalidations caused by progress changes
+     */
+    int getInvalidateCount() {
+        return mInvalidateCount;
+    }
+
+    /**
+     * Sets how the progress label is rendered, {@link #LABEL_RENDERER_LAYOUT} (default) or
+     * {@link #LABEL_RENDERER_GLYPH_ATLAS}.
+     *
+     * @param labelRenderer label renderer
+     */
+    public void setLabelRenderer(int labelRenderer) {
+        mProgressDrawable.setLabelRenderer(labelRenderer);
+    }
+
+    /**
+     * Enables the allocation-free update mode: with the default formatter and a simple progress
+     * string (literal text, "%%" and a single "%d") the label is written into a reusable char buffer
+     * and drawn directly, so once the animation is running no objects are allocated per frame.
+     * Other progress strings and custom formatters keep using the {@link android.text.Layout} path.
+     *
+     * @param allocationFree true to enable the allocation-free update mode (default is false)
+     */
+    public void setAllocationFreeUpdates(boolean allocationFree) {
+        mProgressDrawable.setAllocationFreeUpdates(allocationFree);
+    }
+
+    /**
+     * @return the drawable the progress bar renders through, for the circle and label styles that
+     * have no setter on the view
+     */
+    public ProgressBarLayoutDrawable getProgressDrawable() {
+        return mProgressDrawable;
+    }
+
+    private void setWidthHeightAndCenter() {
+        if (DEBUG_LOGGING) Log.i(TAG, "width = " + getWidth() + ", height = " + getHeight());
+        mProgressDrawable.setContentPadding(getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom());
+        mProgressDrawable.setBounds(0, 0, getWidth(), getHeight());
     }
 
     private void performBeginningAnimation() {
         if (mBeginningCrossAnimationView != null && !mBeginningAnimationPerformed) {
-            mBeginningInverseProgressAnimation.setAnimationListener(new Animation.AnimationListener() {
+            Context context = getContext();
+            Animation progressAnimation = CrossAnimationPool.obtain(context, mBeginningAnimationRes, 0.0f, 1.0f, mBeginningAnimationDuration);
+            Animation inverseAnimation = CrossAnimationPool.obtain(context, mBeginningInverseAnimationRes, 1.0f, 0.0f, mBeginningAnimationDuration);
+
+            progressAnimation.setAnimationListener(new CrossAnimationPool.RecyclingListener(mBeginningAnimationRes, this));
+            inverseAnimation.setAnimationListener(new CrossAnimationPool.RecyclingListener(mBeginningInverseAnimationRes, mBeginningCrossAnimationView) {
                 @Override
                 public void onAnimationStart(Animation animation) {
                     instance.setVisibility(View.VISIBLE);
@@ -360,22 +775,26 @@ public class ProgressBarLayoutView extends View {
 
                 @Override
                 public void onAnimationEnd(Animation animation) {
+                    super.onAnimationEnd(animation);
                     mBeginningCrossAnimationView.setVisibility(View.GONE);
-                }
-
-                @Override
-                public void onAnimationRepeat(Animation animation) {
+                    releaseHardwareLayers(false);
                 }
             });
-            mBeginningCrossAnimationView.startAnimation(mBeginningInverseProgressAnimation);
-            this.startAnimation(mBeginningProgressAnimation);
+            promoteToHardwareLayers(false, mBeginningCrossAnimationView);
+            mBeginningCrossAnimationView.startAnimation(inverseAnimation);
+            this.startAnimation(progressAnimation);
             mBeginningAnimationPerformed = true;
         }
     }
 
     private void performEndingAnimation() {
         if (mEndingCrossAnimationView != null && !mEndingAnimationPerformed) {
-            mEndingInverseProgressAnimation.setAnimationListener(new Animation.AnimationListener() {
+            Context context = getContext();
+            Animation progressAnimation = CrossAnimationPool.obtain(context, mEndingAnimationRes, 1.0f, 0.0f, mEndingAnimationDuration);
+            Animation inverseAnimation = CrossAnimationPool.obtain(context, mEndingInverseAnimationRes, 0.0f, 1.0f, mEndingAnimationDuration);
+
+            progressAnimation.setAnimationListener(new CrossAnimationPool.RecyclingListener(mEndingAnimationRes, this));
+            inverseAnimation.setAnimationListener(new CrossAnimationPool.RecyclingListener(mEndingInverseAnimationRes, mEndingCrossAnimationView) {
                 @Override
                 public void onAnimationStart(Animation animation) {
                     mEndingCrossAnimationView.setVisibility(View.VISIBLE);
@@ -383,33 +802,139 @@ public class ProgressBarLayoutView extends View {
 
                 @Override
                 public void onAnimationEnd(Animation animation) {
+                    super.onAnimationEnd(animation);
                     instance.setVisibility(View.GONE);
-                }
-
-                @Override
-                public void onAnimationRepeat(Animation animation) {
+                    releaseHardwareLayers(true);
                 }
             });
-            mEndingCrossAnimationView.startAnimation(mEndingInverseProgressAnimation);
-            this.startAnimation(mEndingProgressAnimation);
+            promoteToHardwareLayers(true, mEndingCrossAnimationView);
+            mEndingCrossAnimationView.startAnimation(inverseAnimation);
+            this.startAnimation(progressAnimation);
             mEndingAnimationPerformed = true;
         }
     }
 
+    /**
+     * Renders this view and the cross-animation view into hardware layers for the length of a
+     * cross-fade, so that each alpha frame composites the layers instead of redrawing the views.
+     */
+    private void promoteToHardwareLayers(boolean ending, View crossView) {
+        if (!mCrossAnimationHardwareLayers)
+            return;
+
+        releaseHardwareLayers(ending);
+        if (mBeginningLayerView == null && mEndingLayerView == null) {
+            mPreviousLayerType = ViewCompat.getLayerType(this);
+            ViewCompat.setLayerType(this, ViewCompat.LAYER_TYPE_HARDWARE, null);
+        }
+
+        //a view used by both cross-fades keeps the layer type it had before the first one
+        int previousLayerType;
+        if (crossView == (ending ? mBeginningLayerView : mEndingLayerView))
+            previousLayerType = ending ? mBeginningLayerPreviousType : mEndingLayerPreviousType;
+        else
+            previousLayerType = ViewCompat.getLayerType(crossView);
+        ViewCompat.setLayerType(crossView, ViewCompat.LAYER_TYPE_HARDWARE, null);
+
+        if (ending) {
+            mEndingLayerView = crossView;
+            mEndingLayerPreviousType = previousLayerType;
+        } else {
+            mBeginningLayerView = crossView;
+            mBeginningLayerPreviousType = previousLayerType;
+        }
+        if (DEBUG_LOGGING)
+            Log.d(TAG, "promoteToHardwareLayers layer memory = " + getCrossAnimationLayerMemory());
+    }
+
+    /**
+     * Releases the layers promoted for one of the cross-fades, leaving the other one's alone.
+     *
+     * @param ending true for the ending cross-fade, false for the beginning one
+     */
+    private void releaseHardwareLayers(boolean ending) {
+        View crossView = ending ? mEndingLayerView : mBeginningLayerView;
+        if (crossView == null)
+            return;
+
+        int previousLayerType;
+        View otherCrossView;
+        if (ending) {
+            previousLayerType = mEndingLayerPreviousType;
+            mEndingLayerView = null;
+            otherCrossView = mBeginningLayerView;
+        } else {
+            previousLayerType = mBeginningLayerPreviousType;
+            mBeginningLayerView = null;
+            otherCrossView = mEndingLayerView;
+        }
+
+        if (crossView != otherCrossView)
+            ViewCompat.setLayerType(crossView, previousLayerType, null);
+        if (otherCrossView == null)
+            ViewCompat.setLayerType(this, mPreviousLayerType, null);
+    }
+
+    /**
+     * Sets whether this view and the cross-animation views are rendered into hardware layers during
+     * the beginning and ending cross-animations (default is true). The layers are released as soon
+     * as each cross-animation ends.
+     *
+     * @param enabled true to use hardware layers during the cross-animations
+     */
+    public void setCrossAnimationHardwareLayers(boolean enabled) {
+        mCrossAnimationHardwareLayers = enabled;
+        if (!enabled) {
+            releaseHardwareLayers(false);
+            releaseHardwareLayers(true);
+        }
+    }
+
+    /**
+     * Debugging aid: estimates the memory used by the hardware layers currently held for a
+     * cross-animation, at 4 bytes per pixel of each layer.
+     *
+     * @return estimated layer memory in bytes, 0 when no cross-animation is running with layers
+     */
+    public long getCrossAnimationLayerMemory() {
+        if (mBeginningLayerView == null && mEndingLayerView == null)
+            return 0;
+
+        long pixels = (long) getWidth() * getHeight();
+        if (mBeginningLayerView != null)
+            pixels += (long) mBeginningLayerView.getWidth() * mBeginningLayerView.getHeight();
+        if (mEndingLayerView != null && mEndingLayerView != mBeginningLayerView)
+            pixels += (long) mEndingLayerView.getWidth() * mEndingLayerView.getHeight();
+        return LAYER_BYTES_PER_PIXEL * pixels;
+    }
+
     @Override
     public void onDraw(final Canvas canvas) {
         if (DEBUG_LOGGING) Log.d(TAG, "onDraw");
 
-        canvas.drawCircle(mProgressCircle.centerX, mProgressCircle.centerY,
-                mProgressCircle.radius, mProgressCirclePaint);
+        if (mMetrics == null) {
+            drawProgress(canvas);
+            return;
+        }
 
-        if (mTextToPrint != null) {
-            canvas.save();
-            canvas.translate(mCenterX - getPaddingLeft(), mCenterY - getPaddingTop() - mTextToPrint.getHeight() / 2);
-            mTextToPrint.draw(canvas);
-            canvas.restore();
+        long drawStart = System.nanoTime();
+        drawProgress(canvas);
+        long drawEnd = System.nanoTime();
+        mMetrics.recordDrawTime(drawEnd - drawStart);
+        if (mProgressChangeTime != 0) {
+            mMetrics.recordUpdateLatency(drawEnd - mProgressChangeTime);
+            mProgressChangeTime = 0;
         }
+        deliverMetricsIfDue(ProgressFrameTicker.getInstance().uptimeMillis());
+    }
+
+    private void drawProgress(Canvas canvas) {
+        mProgressDrawable.draw(canvas);
+    }
 
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return who == mProgressDrawable || super.verifyDrawable(who);
     }
 
     @Override
@@ -420,92 +945,483 @@ public class ProgressBarLayoutView extends View {
     }
 
     @Override
-    protected synchronized void onLayout(boolean changed, int left, int top, int right, int bottom) {
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
         super.onLayout(changed, left, top, right, bottom);
         if (DEBUG_LOGGING) Log.d(TAG, "onLayout");
         setWidthHeightAndCenter();
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttachedToWindow = true;
+        mWindowVisible = getWindowVisibility() == View.VISIBLE;
+        updateAnimationVisibility();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        mAttachedToWindow = false;
+        updateAnimationVisibility();
+        releaseHardwareLayers(false);
+        releaseHardwareLayers(true);
+        mProgressDrawable.releaseGlyphAtlas();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateAnimationVisibility();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        mWindowVisible = visibility == View.VISIBLE;
+        updateAnimationVisibility();
+    }
+
+    @Override
+    public Parcelable onSaveInstanceState() {
+        SavedState savedState = new SavedState(super.onSaveInstanceState());
+        savedState.progress = mProgressEngine.getProgress();
+        savedState.labelProgress = mProgressEngine.getLabelProgress();
+        savedState.targetProgress = mProgressEngine.getTargetProgress();
+        savedState.maxProgress = mProgressEngine.getMaxProgress();
+        savedState.beginningAnimationPerformed = mBeginningAnimationPerformed;
+        savedState.endingAnimationPerformed = mEndingAnimationPerformed;
+        return savedState;
+    }
+
+    @Override
+    public void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        if (DEBUG_LOGGING)
+            Log.d(TAG, "onRestoreInstanceState progress = " + savedState.progress + ", target = " + savedState.targetProgress);
+
+        mBeginningAnimationPerformed = savedState.beginningAnimationPerformed;
+        mEndingAnimationPerformed = savedState.endingAnimationPerformed;
+        restoreCrossAnimationViews();
+
+        //the label is built once for the restored progress, not for every value in between
+        mProgressAnimator.cancel();
+        endTimeline();
+        mProgressEngine.setMaxProgress(savedState.maxProgress);
+        mProgressDrawable.setMaxProgress(savedState.maxProgress);
+        if (mContinueAnimationOnRestore && savedState.progress != savedState.targetProgress) {
+            mProgressEngine.setPosition(savedState.progress, savedState.labelProgress);
+            mProgressAnimator.start(savedState.targetProgress, Long.MAX_VALUE);
+        } else {
+            mProgressEngine.jumpTo(savedState.targetProgress);
+        }
+        //a restored 100% that wasn't shown yet still performs the ending cross-animation
+        setCurrentProgress(mProgressEngine.getLabelProgress());
+
+        //the drawable shows the restored state from the first frame, even before the first layout;
+        //the radius follows the size once it's known
+        mProgressDrawable.invalidateLabel();
+        mProgressDrawable.setAnimatedProgress(mProgressEngine.getProgress(), mProgressEngine.getLabelProgress());
+        invalidate();
+    }
+
+    /**
+     * Leaves the cross-animation views as the performed cross-animations would have, without running
+     * them again.
+     */
+    private void restoreCrossAnimationViews() {
+        if (mBeginningAnimationPerformed && mBeginningCrossAnimationView != null) {
+            mBeginningCrossAnimationView.setVisibility(View.GONE);
+            setVisibility(View.VISIBLE);
+        }
+        if (mEndingAnimationPerformed && mEndingCrossAnimationView != null) {
+            mEndingCrossAnimationView.setVisibility(View.VISIBLE);
+            setVisibility(View.GONE);
+        }
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
         if (DEBUG_LOGGING) Log.d(TAG, "onSizeChanged");
         setWidthHeightAndCenter();
-        mProgressCircle = new Circle(mCenterX, mCenterY, mBeginningProgressSize);
-        if (w != oldw || h != oldh) mSizeChanged = true;
-        setProgress(mFutureProgress);
+        mHasSize = true;
+        if (w != oldw || h != oldh)
+            mSizeChanged = true;
+
+        if (mTimeline != null && mProgressEngine.isRunning()) {
+            //a running timeline goes on, only the circle and the label follow the new size
+            mSizeChanged = false;
+            setAnimatedProgress(mProgressEngine.getProgress(), mProgressEngine.getLabelProgress());
+        } else {
+            updateProgress(mProgressEngine.getTargetProgress());
+        }
     }
 
-    public class ProgressUpdateTask extends AsyncTask<Integer, Integer, Integer> {
+    /**
+     * Animates the progress on the UI thread, advancing the
+     * {@link com.alterego.progressbarlayout.engine.ProgressEngine} once per display frame.
+     * <p/>
+     * Frames come from the shared {@link com.alterego.progressbarlayout.ProgressFrameTicker}, and
+     * the animator is registered with it only while it's running and the view is attached and
+     * visible. While the view isn't visible the engine is paused.
+     */
+    private class ProgressAnimator implements ProgressFrameTicker.FrameListener {
+
+        void start(long targetProgress, long maxDuration) {
+            if (!mProgressEngine.isRunning()) {
+                mLastAnimationFrameTime = 0;
+                updateInterval();
+            }
+            mProgressEngine.animateTo(targetProgress, ProgressFrameTicker.getInstance().uptimeMillis(), maxDuration);
+            register();
+        }
+
+        void startTimeline(ProgressTimeline timeline) {
+            if (!mProgressEngine.isRunning()) {
+                mLastAnimationFrameTime = 0;
+                updateInterval();
+            }
+            mProgressEngine.animateTimeline(timeline, ProgressFrameTicker.getInstance().uptimeMillis());
+            register();
+        }
+
+        void cancel() {
+            if (mProgressEngine.isRunning()) {
+                if (DEBUG_LOGGING) Log.w(TAG, "ProgressAnimator cancelling animation");
+                if (mMetrics != null)
+                    mMetrics.recordCancellation();
+                mProgressEngine.cancel();
+                unregister();
+            }
+        }
+
+        void register() {
+            if (mProgressEngine.isRunning() && mAnimationVisible)
+                ProgressFrameTicker.getInstance().addFrameListener(this);
+        }
 
-        private final ProgressBarLayoutView mProgressBarLayoutView;
+        void updateInterval() {
+            mUpdateInterval = mUpdatePolicy != null ? mUpdatePolicy.getFrameInterval(ProgressBarLayoutView.this) : ProgressUpdatePolicy.FULL_FIDELITY;
+            if (DEBUG_LOGGING) Log.d(TAG, "ProgressAnimator update interval = " + mUpdateInterval);
+        }
+
+        void pause() {
+            mProgressEngine.pause(ProgressFrameTicker.getInstance().uptimeMillis());
+            unregister();
+        }
+
+        void resume() {
+            mProgressEngine.resume(ProgressFrameTicker.getInstance().uptimeMillis());
+            //the system settings could have changed while the view was hidden
+            updateInterval();
+            if (mHiddenResumeMode == HIDDEN_RESUME_JUMP && mProgressEngine.isRunning()) {
+                mProgressEngine.finish();
+                if (mTimeline != null)
+                    dispatchTimelineSegments();
+                if (mHasSize)
+                    setAnimatedProgress(mProgressEngine.getProgress(), mProgressEngine.getLabelProgress());
+            }
+            register();
+        }
 
-        public ProgressUpdateTask(ProgressBarLayoutView view) {
-            mProgressBarLayoutView = view;
+        void unregister() {
+            ProgressFrameTicker.getInstance().removeFrameListener(this);
         }
 
         @Override
-        protected Integer doInBackground(Integer... params) {
-            if (mProgressCircle == null)
-                return null;
-            int starting_progress = params[0];
-            int final_progress = params[1];
-            if (final_progress >= getMaxProgress())
-                final_progress = getMaxProgress();
-
-            boolean isIncreasing = starting_progress <= final_progress;
-
-            while (isIncreasing ? starting_progress < final_progress : starting_progress > final_progress) {
-                if (isCancelled())
-                    break;
-
-                if (isIncreasing) {
-                    starting_progress++;
-                    mProgressCircle.radius += mIncreaseStep;
-                } else {
-                    starting_progress--;
-                    mProgressCircle.radius -= mIncreaseStep;
-                }
+        public void doFrame(long frameTimeMillis) {
+            if (!mProgressEngine.isRunning())
+                return;
+
+            //not laid out yet, onSizeChanged will start the animation again (or pick up the timeline)
+            if (!mHasSize) {
+                if (mTimeline == null)
+                    cancel();
+                return;
+            }
+
+            long frameDelta = mLastAnimationFrameTime != 0 ? frameTimeMillis - mLastAnimationFrameTime : 0;
+            boolean running;
+            if (mUpdateInterval == ProgressUpdatePolicy.JUMP_TO_TARGET) {
+                //still goes through the frame, so the ending cross-animation follows the beginning one
+                mProgressEngine.finish();
+                running = false;
+            } else {
+                //throttled by the update policy, the engine catches up at the next update
+                if (mUpdateInterval > 0 && frameDelta != 0 && frameDelta < mUpdateInterval)
+                    return;
+                running = mProgressEngine.update(frameTimeMillis);
+            }
+            mAnimationFrameCount++;
+            mLastAnimationFrameTime = running ? frameTimeMillis : 0;
+
+            if (mMetrics != null) {
+                mMetrics.recordFrame(frameDelta, Math.max(mFrameInterval, mUpdateInterval));
+                deliverMetricsIfDue(frameTimeMillis);
+            }
 
-                publishProgress(starting_progress);
+            if (DEBUG_LOGGING)
+                Log.d(TAG, "ProgressAnimator frame time = " + frameTimeMillis + ", progress = " + mProgressEngine.getProgress());
+            if (mTimeline != null)
+                dispatchTimelineSegments();
+            setAnimatedProgress(mProgressEngine.getProgress(), mProgressEngine.getLabelProgress());
 
-                try {
-                    if (DEBUG_LOGGING)
-                        Log.d(TAG, "ProgressUpdateTask doInBackground sleep = " + mSleepTime);
-                    Thread.sleep(mSleepTime);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+            if (!running)
+                unregister();
+        }
+    }
+
+    /**
+     * Collects style changes and applies them at once, see {@link ProgressBarLayoutView#edit()}.
+     * Must be used on the UI thread.
+     */
+    public class StyleEditor {
+
+        private boolean mHasProgressColor;
+        private int mNewProgressColor;
+        private boolean mHasTextColor;
+        private int mNewTextColor;
+        private boolean mHasTextSize;
+        private float mNewTextSize;
+        private boolean mHasTypeface;
+        private Typeface mNewTypeface;
+        private boolean mHasProgressString;
+        private String mNewProgressString;
+        private boolean mHasBeginningProgressSize;
+        private float mNewBeginningProgressSize;
+
+        private StyleEditor() {
+        }
+
+        /**
+         * @param color color of the progress bar circle
+         */
+        public StyleEditor setProgressColor(int color) {
+            mHasProgressColor = true;
+            mNewProgressColor = color;
+            return this;
+        }
+
+        /**
+         * @param color color of the progress text
+         */
+        public StyleEditor setProgressTextColor(int color) {
+            mHasTextColor = true;
+            mNewTextColor = color;
+            return this;
+        }
+
+        /**
+         * @param size size of the progress bar text
+         */
+        public StyleEditor setTextProgressSize(float size) {
+            mHasTextSize = true;
+            mNewTextSize = size;
+            return this;
+        }
+
+        /**
+         * @param font typeface for the label
+         */
+        public StyleEditor setTypeface(Typeface font) {
+            mHasTypeface = true;
+            mNewTypeface = font;
+            return this;
+        }
+
+        /**
+         * @param progressString progress bar string, as the textProgressString parameter
+         */
+        public StyleEditor setTextProgressString(String progressString) {
+            mHasProgressString = true;
+            mNewProgressString = progressString;
+            return this;
+        }
+
+        /**
+         * @param size size of the beginning progress circle
+         */
+        public StyleEditor setBeginningProgressSize(float size) {
+            mHasBeginningProgressSize = true;
+            mNewBeginningProgressSize = size;
+            return this;
+        }
+
+        /**
+         * Applies all the changes: updates the paints and the radius, marks the label to be rebuilt
+         * once at the next draw, and requests one relayout (only if the typeface changed) and one
+         * redraw.
+         */
+        public void apply() {
+            boolean relayout = false;
+
+            //the label cache and the glyph atlas follow the text paint by themselves
+            if (mHasProgressColor)
+                mProgressDrawable.setProgressColor(mNewProgressColor);
+            if (mHasTextColor)
+                mProgressDrawable.setProgressTextColor(mNewTextColor);
+            if (mHasTextSize)
+                mProgressDrawable.setTextProgressSize(mNewTextSize);
+            if (mHasTypeface && mNewTypeface != mProgressDrawable.getTypeface()) {
+                mProgressDrawable.setTypeface(mNewTypeface);
+                relayout = true;
+            }
+            if (mHasProgressString) {
+                //during a timeline the new template is shown where the segments don't set their own
+                if (mTimeline != null) {
+                    mBaseProgressString = mNewProgressString;
+                    applySegmentLabel(mNotifiedSegments);
+                } else {
+                    mProgressDrawable.setTextProgressString(mNewProgressString);
                 }
             }
-            return final_progress;
+            if (mHasBeginningProgressSize)
+                mProgressDrawable.setBeginningProgressSize(mNewBeginningProgressSize);
+
+            if (relayout)
+                requestLayout();
+            invalidate();
         }
+    }
+
+    /**
+     * Applies the progress posted with {@link #postProgress(int)} on the next frame. It's posted to
+     * the UI thread only when the slot goes from empty to full, so there's at most one post per frame.
+     */
+    private class PostedProgressReader implements Runnable, ProgressFrameTicker.FrameListener {
 
         @Override
-        protected void onProgressUpdate(Integer... values) {
-            super.onProgressUpdate(values);
-            int value = values[0];
-            if (DEBUG_LOGGING) Log.d(TAG, "onProgressUpdate progress = " + value);
-            mProgressBarLayoutView.setCurrentProgress(value);
-            mTextToPrint = mProgressStringFormatter.formatProgressString(value, mTextProgressString, mTextPaint, mWidth, getPaddingLeft(), getPaddingRight());
-            invalidate();
+        public void run() {
+            ProgressFrameTicker.getInstance().addFrameListener(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeMillis) {
+            ProgressFrameTicker.getInstance().removeFrameListener(this);
+            int progress = mPostedProgress.getAndSet(NO_POSTED_PROGRESS);
+            if (progress != NO_POSTED_PROGRESS)
+                setProgress(progress);
+        }
+    }
+
+    /**
+     * Samples the {@link com.alterego.progressbarlayout.ProgressSource} once per frame, only
+     * starting an animation when its progress changed. Each sample is animated within the time
+     * since the previous one rather than per progress unit, so the circle keeps up with the source
+     * (a byte count grows by thousands of units per frame) instead of falling further behind.
+     */
+    private class ProgressSourceSampler implements ProgressFrameTicker.FrameListener {
+
+        private long mLastSampleTime = 0;
+        //time assumed before the first sample, when there's no previous one
+        private long mFirstSampleInterval = DEFAULT_FRAME_INTERVAL_IN_MS;
+
+        void register() {
+            if (mProgressSource != null && mAnimationVisible) {
+                mLastSampleTime = 0;
+                long policyInterval = mUpdatePolicy != null ? mUpdatePolicy.getFrameInterval(ProgressBarLayoutView.this) : ProgressUpdatePolicy.FULL_FIDELITY;
+                mFirstSampleInterval = Math.max(DEFAULT_FRAME_INTERVAL_IN_MS, policyInterval);
+                ProgressFrameTicker.getInstance().addFrameListener(this);
+            }
+        }
+
+        void unregister() {
+            ProgressFrameTicker.getInstance().removeFrameListener(this);
         }
 
         @Override
-        protected void onPostExecute(Integer integer) {
-            super.onPostExecute(integer);
+        public void doFrame(long frameTimeMillis) {
+            if (mProgressSource == null)
+                return;
+
+            //read before the progress, so a finished source is sampled with its last progress
+            boolean finished = mProgressSource.isFinished();
+            long maxProgress = mProgressSource.getMaxProgress();
+            long progress = mProgressSource.getProgress();
+            if (maxProgress > 0)
+                updateMaxProgress(maxProgress);
+            long sampleInterval = mLastSampleTime != 0 ? frameTimeMillis - mLastSampleTime : mFirstSampleInterval;
+            mLastSampleTime = frameTimeMillis;
+            if (mProgressEngine.clamp(progress) != mProgressEngine.getTargetProgress())
+                updateProgress(progress, sampleInterval);
+
+            //a finished source doesn't change anymore
+            if (finished || (maxProgress > 0 && progress >= maxProgress)) {
+                if (DEBUG_LOGGING) Log.d(TAG, "ProgressSourceSampler source finished");
+                unregister();
+            }
         }
     }
 
-    private class Circle {
-        float radius;
-        float centerX;
-        float centerY;
+    /**
+     * Progress state kept across configuration changes: the animated position, target and maximum,
+     * and whether the cross-animations were performed.
+     */
+    static class SavedState extends BaseSavedState {
+        double progress;
+        long labelProgress;
+        long targetProgress;
+        long maxProgress;
+        boolean beginningAnimationPerformed;
+        boolean endingAnimationPerformed;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            progress = in.readDouble();
+            labelProgress = in.readLong();
+            targetProgress = in.readLong();
+            maxProgress = in.readLong();
+            beginningAnimationPerformed = in.readInt() != 0;
+            endingAnimationPerformed = in.readInt() != 0;
+        }
 
-        Circle(float x, float y, float innerCircleSize) {
-            this.radius = innerCircleSize;
-            this.centerX = x;
-            this.centerY = y;
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeDouble(progress);
+            out.writeLong(labelProgress);
+            out.writeLong(targetProgress);
+            out.writeLong(maxProgress);
+            out.writeInt(beginningAnimationPerformed ? 1 : 0);
+            out.writeInt(endingAnimationPerformed ? 1 : 0);
         }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+    /**
+     * Listener of the segments of a {@link com.alterego.progressbarlayout.engine.ProgressTimeline}
+     * animated with {@link ProgressBarLayoutView#setProgressTimeline(ProgressTimeline)}.
+     */
+    public interface OnTimelineSegmentListener {
+        /**
+         * Called on the UI thread when the animation reaches the target of a segment.
+         *
+         * @param view    progress bar animating the timeline
+         * @param segment index of the segment in the timeline
+         */
+        void onSegmentEnd(ProgressBarLayoutView view, int segment);
     }
 
     /**
@@ -534,36 +1450,7 @@ public class ProgressBarLayoutView extends View {
      * @param progressStringFormatter progress string formatter {@link com.alterego.progressbarlayout.ProgressBarLayoutView.IProgressStringFormatter}
      */
     public void setProgressStringFormatter(IProgressStringFormatter progressStringFormatter) {
-        mProgressStringFormatter = progressStringFormatter;
-    }
-
-    private class DefaultProgressStringFormatter implements IProgressStringFormatter {
-
-        @Override
-        public Layout formatProgressString(int progress, String progressString, TextPaint textPaint, int width, int padding_left, int padding_right) {
-            if (progressString != null) {
-                try {
-                    String currentProgressString = String.format(progressString, progress);
-                    if (DEBUG_LOGGING)
-                        Log.v(TAG, "formatProgressString currentProgressString = " + currentProgressString);
-                    StaticLayout textToPrint = new StaticLayout(currentProgressString,
-                            textPaint,
-                            Math.abs((width - padding_left - padding_right)),
-                            Layout.Alignment.ALIGN_NORMAL,
-                            TEXTPAINT_SPACING_MULT,
-                            TEXTPAINT_SPACING_ADD,
-                            false);
-
-                    if (DEBUG_LOGGING)
-                        Log.d(TAG, "formatProgressString height of static layout = " + textToPrint.getHeight() + ", width = " + textToPrint.getWidth());
-                    return textToPrint;
-                } catch (Exception e) {
-                    Log.e(TAG, "formatProgressString formatting error = " + e.toString());
-                }
-            }
-
-            return null;
-        }
+        mProgressDrawable.setProgressStringFormatter(progressStringFormatter);
     }
 
 }
@@ -0,0 +1,240 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * Process-wide frame ticker shared by all the animating progress views: however many views are
+ * animating, there is a single frame callback per frame, and it dispatches the frame to every
+ * registered listener. It uses the {@link android.view.Choreographer} on API 16 and up, and a
+ * main thread {@link android.os.Handler} with a fixed delay on older releases.
+ * <p/>
+ * The ticker is also the clock of the animations ({@link #uptimeMillis()}). Both can be replaced
+ * with a {@link com.alterego.progressbarlayout.ProgressFrameTicker.ManualFrameSource}, which only
+ * produces frames when it's advanced, to drive the views deterministically off the device.
+ * <p/>
+ * The ticker must only be used from the UI thread.
+ */
+class ProgressFrameTicker {
+
+    private static final long FALLBACK_FRAME_DELAY_IN_MS = 10;
+
+    private static ProgressFrameTicker sInstance;
+
+    /**
+     * Receives the frames of the {@link com.alterego.progressbarlayout.ProgressFrameTicker}.
+     */
+    interface FrameListener {
+        /**
+         * @param frameTimeMillis frame time in the {@link android.os.SystemClock#uptimeMillis()} time base
+         */
+        void doFrame(long frameTimeMillis);
+    }
+
+    private final ArrayList<FrameListener> mListeners = new ArrayList<FrameListener>();
+    private FrameListener[] mDispatchBuffer = new FrameListener[8];
+    private FrameSource mFrameSource;
+    private boolean mFrameRequested = false;
+
+    static ProgressFrameTicker getInstance() {
+        if (sInstance == null)
+            sInstance = new ProgressFrameTicker();
+        return sInstance;
+    }
+
+    /**
+     * Drops the shared ticker, with its listeners and frame source, so that the next
+     * {@link #getInstance()} starts from scratch; for harnesses running many tests in one process.
+     */
+    static void resetInstance() {
+        sInstance = null;
+    }
+
+    private ProgressFrameTicker() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            mFrameSource = new ChoreographerFrameSource();
+        else
+            mFrameSource = new HandlerFrameSource();
+    }
+
+    /**
+     * Adds the listener, which will receive every frame until it's removed. Adding a listener
+     * that is already registered does nothing.
+     */
+    void addFrameListener(FrameListener listener) {
+        if (mListeners.contains(listener))
+            return;
+        mListeners.add(listener);
+        requestFrame();
+    }
+
+    void removeFrameListener(FrameListener listener) {
+        mListeners.remove(listener);
+    }
+
+    int getFrameListenerCount() {
+        return mListeners.size();
+    }
+
+    /**
+     * @return current time in the time base of the frames
+     */
+    long uptimeMillis() {
+        return mFrameSource.uptimeMillis();
+    }
+
+    /**
+     * Replaces the source of the frames and of the time, for tests and harnesses running the views
+     * on a fake clock. Pending frames of the previous source are dropped, and a frame is requested
+     * from the new one if listeners are registered.
+     *
+     * @param frameSource frame source
+     */
+    void setFrameSource(FrameSource frameSource) {
+        mFrameSource = frameSource;
+        mFrameRequested = false;
+        if (!mListeners.isEmpty())
+            requestFrame();
+    }
+
+    private void requestFrame() {
+        if (!mFrameRequested) {
+            mFrameRequested = true;
+            mFrameSource.postFrame();
+        }
+    }
+
+    private void dispatchFrame(long frameTimeMillis) {
+        mFrameRequested = false;
+
+        //listeners can remove themselves (or others) while the frame is dispatched
+        int count = mListeners.size();
+        if (mDispatchBuffer.length < count)
+            mDispatchBuffer = new FrameListener[Math.max(count, mDispatchBuffer.length * 2)];
+        mListeners.toArray(mDispatchBuffer);
+
+        for (int i = 0; i < count; i++) {
+            FrameListener listener = mDispatchBuffer[i];
+            mDispatchBuffer[i] = null;
+            listener.doFrame(frameTimeMillis);
+        }
+
+        if (!mListeners.isEmpty())
+            requestFrame();
+    }
+
+    interface FrameSource {
+        /**
+         * Requests a single call to {@link #dispatchFrame(long)} at the next frame.
+         */
+        void postFrame();
+
+        /**
+         * @return current time in the {@link android.os.SystemClock#uptimeMillis()} time base
+         */
+        long uptimeMillis();
+    }
+
+    /**
+     * Frame source with a fake clock: time only passes, and frames are only dispatched, when
+     * {@link #advance(long)} is called.
+     */
+    static class ManualFrameSource implements FrameSource {
+
+        private long mTime;
+        private boolean mFramePending = false;
+
+        ManualFrameSource(long startTime) {
+            mTime = startTime;
+        }
+
+        @Override
+        public void postFrame() {
+            mFramePending = true;
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return mTime;
+        }
+
+        /**
+         * Moves the clock forward and dispatches the requested frame, if any, at the new time.
+         *
+         * @param durationInMs time to move the clock by
+         * @return true if a frame was dispatched
+         */
+        boolean advance(long durationInMs) {
+            mTime += durationInMs;
+            if (!mFramePending)
+                return false;
+
+            mFramePending = false;
+            getInstance().dispatchFrame(mTime);
+            return true;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class ChoreographerFrameSource implements FrameSource, Choreographer.FrameCallback {
+
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+
+        @Override
+        public void postFrame() {
+            mChoreographer.postFrameCallback(this);
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            dispatchFrame(frameTimeNanos / 1000000);
+        }
+    }
+
+    private class HandlerFrameSource implements FrameSource, Runnable {
+
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void postFrame() {
+            mHandler.postDelayed(this, FALLBACK_FRAME_DELAY_IN_MS);
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+
+        @Override
+        public void run() {
+            dispatchFrame(SystemClock.uptimeMillis());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+/**
+ * Small bitmap atlas holding the glyphs a numeric progress label can use (the digits, the minus
+ * sign and the characters of the progress string). The glyphs are rasterized once per typeface and
+ * text size into an {@link android.graphics.Bitmap.Config#ALPHA_8} bitmap, and labels are then
+ * drawn by copying the glyphs next to each other at their precomputed advances, tinted with the
+ * color of the paint they're drawn with.
+ * <p/>
+ * Kerning between glyphs is not applied.
+ */
+class ProgressGlyphAtlas {
+
+    //empty space around each glyph, for glyphs drawing outside of their advance
+    private static final int GLYPH_PADDING = 2;
+
+    private String mGlyphString;
+    private Typeface mTypeface;
+    private float mTextSize;
+
+    private char[] mGlyphs;
+    private float[] mAdvances;
+    private int[] mCellLefts;
+    private Bitmap mAtlas;
+    private int mAtlasTop;
+
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDstRect = new Rect();
+
+    /**
+     * Draws the label horizontally centered on centerX, rasterizing the glyphs first if the paint
+     * changed since the last call.
+     *
+     * @param canvas    canvas to draw on
+     * @param text      label characters
+     * @param length    number of characters of the label
+     * @param glyphs    all the characters the labels can contain
+     * @param centerX   horizontal center of the label
+     * @param baseline  baseline of the label
+     * @param paint     paint the glyphs are rasterized and tinted with
+     */
+    void draw(Canvas canvas, char[] text, int length, String glyphs, float centerX, float baseline, Paint paint) {
+        prepare(glyphs, paint);
+
+        float labelWidth = 0;
+        for (int i = 0; i < length; i++) {
+            int glyph = indexOf(text[i]);
+            if (glyph >= 0)
+                labelWidth += mAdvances[glyph];
+        }
+
+        float penX = centerX - labelWidth / 2;
+        int top = Math.round(baseline) + mAtlasTop;
+        for (int i = 0; i < length; i++) {
+            int glyph = indexOf(text[i]);
+            if (glyph < 0)
+                continue;
+
+            int cellLeft = mCellLefts[glyph];
+            int cellRight = cellLeft + cellWidth(glyph);
+            mSrcRect.set(cellLeft, 0, cellRight, mAtlas.getHeight());
+            int left = Math.round(penX) - GLYPH_PADDING;
+            mDstRect.set(left, top, left + cellRight - cellLeft, top + mAtlas.getHeight());
+            canvas.drawBitmap(mAtlas, mSrcRect, mDstRect, paint);
+            penX += mAdvances[glyph];
+        }
+    }
+
+    /**
+     * Releases the atlas bitmap, it will be rasterized again on the next draw.
+     */
+    void release() {
+        if (mAtlas != null) {
+            mAtlas.recycle();
+            mAtlas = null;
+        }
+        mGlyphString = null;
+    }
+
+    private void prepare(String glyphs, Paint paint) {
+        if (mAtlas != null && glyphs.equals(mGlyphString)
+                && paint.getTypeface() == mTypeface && paint.getTextSize() == mTextSize)
+            return;
+
+        release();
+        mGlyphString = glyphs;
+        mTypeface = paint.getTypeface();
+        mTextSize = paint.getTextSize();
+
+        Paint glyphPaint = new Paint(paint);
+        glyphPaint.setTextAlign(Paint.Align.LEFT);
+        glyphPaint.setColor(0xff000000);
+        Paint.FontMetricsInt metrics = glyphPaint.getFontMetricsInt();
+
+        mGlyphs = glyphs.toCharArray();
+        mAdvances = new float[mGlyphs.length];
+        mCellLefts = new int[mGlyphs.length];
+        int atlasWidth = 0;
+        for (int i = 0; i < mGlyphs.length; i++) {
+            mAdvances[i] = glyphPaint.measureText(mGlyphs, i, 1);
+            mCellLefts[i] = atlasWidth;
+            atlasWidth += cellWidth(i);
+        }
+
+        mAtlasTop = metrics.top;
+        int atlasHeight = Math.max(1, metrics.bottom - metrics.top);
+        mAtlas = Bitmap.createBitmap(Math.max(1, atlasWidth), atlasHeight, Bitmap.Config.ALPHA_8);
+        Canvas atlasCanvas = new Canvas(mAtlas);
+        for (int i = 0; i < mGlyphs.length; i++) {
+            atlasCanvas.drawText(mGlyphs, i, 1, mCellLefts[i] + GLYPH_PADDING, -metrics.top, glyphPaint);
+        }
+    }
+
+    private int cellWidth(int glyph) {
+        return (int) Math.ceil(mAdvances[glyph]) + 2 * GLYPH_PADDING;
+    }
+
+    private int indexOf(char c) {
+        for (int i = 0; i < mGlyphs.length; i++) {
+            if (mGlyphs[i] == c)
+                return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,109 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+
+import android.graphics.Typeface;
+import android.support.v4.util.LruCache;
+import android.text.Layout;
+import android.text.TextPaint;
+
+/**
+ * Bounded LRU cache of progress label layouts, keyed by the progress value. The cache remembers the
+ * inputs the layouts were built with (progress string, available width, typeface, text size and
+ * color) and empties itself as soon as any of them changes, so a cached layout is never drawn with
+ * stale text metrics.
+ * <p/>
+ * The default formatter uses it to avoid rebuilding the same layouts on every animation, and custom
+ * {@link com.alterego.progressbarlayout.ProgressBarLayoutView.IProgressStringFormatter} implementations
+ * can use it the same way: call {@link #get} first and {@link #put} the layout they build on a miss.
+ */
+public class ProgressLabelCache {
+
+    public static final int DEFAULT_MAX_SIZE = 101;
+
+    private final LruCache<Integer, Layout> mLayouts;
+
+    private String mProgressString;
+    private int mWidth = -1;
+    private Typeface mTypeface;
+    private float mTextSize;
+    private int mTextColor;
+
+    public ProgressLabelCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize maximum number of layouts kept in the cache
+     */
+    public ProgressLabelCache(int maxSize) {
+        mLayouts = new LruCache<Integer, Layout>(maxSize);
+    }
+
+    /**
+     * Returns the cached layout for the progress, or null if it has to be built.
+     *
+     * @param progress       progress
+     * @param progressString progress bar string the layout is built from
+     * @param textPaint      {@link android.text.TextPaint} the layout is built with
+     * @param width          width available to the layout
+     * @return cached layout or null
+     */
+    public Layout get(int progress, String progressString, TextPaint textPaint, int width) {
+        checkInputs(progressString, textPaint, width);
+        return mLayouts.get(progress);
+    }
+
+    /**
+     * Stores the layout built for the progress with the given inputs.
+     *
+     * @param progress       progress
+     * @param progressString progress bar string the layout was built from
+     * @param textPaint      {@link android.text.TextPaint} the layout was built with
+     * @param width          width available to the layout
+     * @param layout         layout to store, ignored if null
+     */
+    public void put(int progress, String progressString, TextPaint textPaint, int width, Layout layout) {
+        checkInputs(progressString, textPaint, width);
+        if (layout != null)
+            mLayouts.put(progress, layout);
+    }
+
+    /**
+     * Removes all the cached layouts.
+     */
+    public void clear() {
+        mLayouts.evictAll();
+    }
+
+    private void checkInputs(String progressString, TextPaint textPaint, int width) {
+        Typeface typeface = textPaint.getTypeface();
+        float textSize = textPaint.getTextSize();
+        int textColor = textPaint.getColor();
+
+        boolean sameProgressString = progressString == null ? mProgressString == null : progressString.equals(mProgressString);
+        if (!sameProgressString || width != mWidth || typeface != mTypeface
+                || textSize != mTextSize || textColor != mTextColor) {
+            clear();
+            mProgressString = progressString;
+            mWidth = width;
+            mTypeface = typeface;
+            mTextSize = textSize;
+            mTextColor = textColor;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+/**
+ * Source of progress sampled by a {@link com.alterego.progressbarlayout.ProgressBarLayoutView} once
+ * per frame, see {@link ProgressBarLayoutView#setProgressSource(ProgressSource)}. The work reporting
+ * the progress only has to update a counter, the view reads it when it draws the next frame. The
+ * view stops sampling when the progress reaches a known maximum or the source is finished.
+ * <p/>
+ * All the methods are called on the UI thread while the work runs on another one, so they must be
+ * thread safe and cheap: read a volatile field, don't lock or compute.
+ */
+public interface ProgressSource {
+
+    /**
+     * @return current progress
+     */
+    long getProgress();
+
+    /**
+     * @return maximum progress, or 0 or less if it isn't known and the view's maximum is kept
+     */
+    long getMaxProgress();
+
+    /**
+     * Tells the view to stop sampling, which matters when the maximum isn't known. Set the flag after
+     * the last progress update: the view reads it before the progress.
+     *
+     * @return true once the progress doesn't change anymore (the end of the data was reached or the
+     * source was closed, for example)
+     */
+    boolean isFinished();
+}
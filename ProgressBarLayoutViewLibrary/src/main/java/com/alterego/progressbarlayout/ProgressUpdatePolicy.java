@@ -0,0 +1,47 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+/**
+ * Decides how closely a {@link com.alterego.progressbarlayout.ProgressBarLayoutView} follows its
+ * progress animations: on every display frame, at a lower frame rate or not at all, showing the
+ * target progress right away. The beginning and ending cross-animations are performed either way.
+ * <p/>
+ * The view asks the policy when an animation starts and when it resumes after being hidden, not on
+ * every frame, so the policy can read system settings or services; see
+ * {@link com.alterego.progressbarlayout.SystemProgressUpdatePolicy} for the default one. Apps can
+ * implement their own to throttle the progress bars under thermal or load pressure, for example.
+ */
+public interface ProgressUpdatePolicy {
+
+    /**
+     * The animation is updated on every display frame.
+     */
+    long FULL_FIDELITY = 0;
+    /**
+     * The animation isn't run: the target progress is shown on the next frame.
+     */
+    long JUMP_TO_TARGET = -1;
+
+    /**
+     * Called on the UI thread.
+     *
+     * @param view view about to animate its progress
+     * @return minimum time between two updates of the animation in ms, {@link #FULL_FIDELITY} or
+     * {@link #JUMP_TO_TARGET}
+     */
+    long getFrameInterval(ProgressBarLayoutView view);
+}
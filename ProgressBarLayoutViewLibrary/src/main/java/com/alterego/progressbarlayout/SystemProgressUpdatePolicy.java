@@ -0,0 +1,118 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+import android.provider.Settings;
+import android.util.Log;
+
+import java.lang.reflect.Method;
+
+/**
+ * Default {@link ProgressUpdatePolicy}, following the system: with the animator duration scale set
+ * to 0 (animations turned off in the developer options or by accessibility settings) the target
+ * progress is shown right away, in battery saver mode the animation runs at a lower frame rate,
+ * otherwise on every frame.
+ */
+public class SystemProgressUpdatePolicy implements ProgressUpdatePolicy {
+
+    private static final String TAG = "SystemProgressUpdatePolicy";
+    private static final boolean DEBUG_LOGGING = false;
+
+    /**
+     * Default time between two updates in battery saver mode, 20 frames per second.
+     */
+    public static final long DEFAULT_POWER_SAVE_FRAME_INTERVAL_IN_MS = 50;
+
+    //PowerManager.isPowerSaveMode() is API 21, above the SDK the library compiles against, so
+    //neither the method nor Build.VERSION_CODES.LOLLIPOP can be referenced directly
+    private static final int API_POWER_SAVE_MODE = 21;
+    private static Method sIsPowerSaveMode;
+    private static boolean sIsPowerSaveModeResolved = false;
+
+    private final long mPowerSaveFrameInterval;
+
+    public SystemProgressUpdatePolicy() {
+        this(DEFAULT_POWER_SAVE_FRAME_INTERVAL_IN_MS);
+    }
+
+    /**
+     * @param powerSaveFrameIntervalInMs time between two updates in battery saver mode, or
+     *                                   {@link #JUMP_TO_TARGET} not to animate at all
+     */
+    public SystemProgressUpdatePolicy(long powerSaveFrameIntervalInMs) {
+        mPowerSaveFrameInterval = powerSaveFrameIntervalInMs;
+    }
+
+    @Override
+    public long getFrameInterval(ProgressBarLayoutView view) {
+        Context context = view.getContext();
+        if (getAnimatorDurationScale(context) == 0)
+            return JUMP_TO_TARGET;
+        if (isPowerSaveMode(context))
+            return mPowerSaveFrameInterval;
+        return FULL_FIDELITY;
+    }
+
+    /**
+     * @param context context
+     * @return the system animator duration scale, 1 where it can't be read (before API 16)
+     */
+    @SuppressWarnings("deprecation")
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    public static float getAnimatorDurationScale(Context context) {
+        ContentResolver resolver = context.getContentResolver();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1)
+            return Settings.Global.getFloat(resolver, Settings.Global.ANIMATOR_DURATION_SCALE, 1.0f);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            return Settings.System.getFloat(resolver, Settings.System.ANIMATOR_DURATION_SCALE, 1.0f);
+        return 1.0f;
+    }
+
+    /**
+     * @param context context
+     * @return true if battery saver mode is on, always false before API 21
+     */
+    public static boolean isPowerSaveMode(Context context) {
+        if (Build.VERSION.SDK_INT < API_POWER_SAVE_MODE)
+            return false;
+
+        if (!sIsPowerSaveModeResolved) {
+            try {
+                sIsPowerSaveMode = PowerManager.class.getMethod("isPowerSaveMode");
+            } catch (NoSuchMethodException e) {
+                if (DEBUG_LOGGING) Log.w(TAG, "isPowerSaveMode not available", e);
+            }
+            sIsPowerSaveModeResolved = true;
+        }
+        if (sIsPowerSaveMode == null)
+            return false;
+
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager == null)
+            return false;
+        try {
+            return (Boolean) sIsPowerSaveMode.invoke(powerManager);
+        } catch (Exception e) {
+            if (DEBUG_LOGGING) Log.w(TAG, "isPowerSaveMode failed", e);
+            return false;
+        }
+    }
+}
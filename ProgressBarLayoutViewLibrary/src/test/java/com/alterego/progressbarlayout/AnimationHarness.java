@@ -0,0 +1,160 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+import android.app.Activity;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import com.alterego.progressbarlayout.engine.ProgressEngine;
+
+import org.robolectric.Robolectric;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Drives the progress views deterministically on the JVM: the frame ticker runs on a
+ * {@link com.alterego.progressbarlayout.ProgressFrameTicker.ManualFrameSource}, installed by the
+ * {@link com.alterego.progressbarlayout.ProgressBarLayoutTestRunner}, and frames are dispatched
+ * one by one, 16 ms apart, by {@link #frame()}.
+ */
+final class AnimationHarness {
+
+    static final long FRAME_INTERVAL_IN_MS = 16;
+    static final int BEGINNING_PROGRESS_SIZE = 10;
+    static final String PROGRESS_STRING = "%d%%";
+
+    private static final long START_TIME = 1000000;
+    //no animation in the tests should need more frames than this, it would be stuck
+    private static final int MAX_FRAMES = 1000000;
+
+    private static ProgressFrameTicker.ManualFrameSource sFrameSource;
+    private static com.sun.management.ThreadMXBean sThreadBean;
+
+    private AnimationHarness() {
+    }
+
+    static void install() {
+        sFrameSource = new ProgressFrameTicker.ManualFrameSource(START_TIME);
+        ProgressFrameTicker.getInstance().setFrameSource(sFrameSource);
+    }
+
+    static void uninstall() {
+        sFrameSource = null;
+        ProgressFrameTicker.resetInstance();
+    }
+
+    /**
+     * @return current time of the fake clock
+     */
+    static long now() {
+        return sFrameSource.uptimeMillis();
+    }
+
+    /**
+     * Moves the clock by a frame interval and dispatches the frame, if one was requested.
+     *
+     * @return true if a frame was dispatched
+     */
+    static boolean frame() {
+        return sFrameSource.advance(FRAME_INTERVAL_IN_MS);
+    }
+
+    /**
+     * Dispatches frames until nothing is animating anymore.
+     *
+     * @return number of frames dispatched
+     */
+    static int runUntilIdle() {
+        int frames = 0;
+        while (frame()) {
+            if (++frames > MAX_FRAMES)
+                fail("still animating after " + MAX_FRAMES + " frames");
+        }
+        return frames;
+    }
+
+    /**
+     * @return a resumed, visible activity to attach the views to
+     */
+    static FrameLayout createContainer() {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().start().resume().visible().get();
+        FrameLayout container = new FrameLayout(activity);
+        activity.setContentView(container);
+        return container;
+    }
+
+    /**
+     * Creates a progress view with the harness' beginning size and label, attached to the container
+     * and laid out at the given size. The update policy is turned off so the system settings of the
+     * JVM don't matter.
+     */
+    static ProgressBarLayoutView addView(FrameLayout container, int width, int height) {
+        ProgressBarLayoutView view = new ProgressBarLayoutView(container.getContext());
+        view.setUpdatePolicy(null);
+        view.edit()
+                .setBeginningProgressSize(BEGINNING_PROGRESS_SIZE)
+                .setTextProgressString(PROGRESS_STRING)
+                .apply();
+        container.addView(view, new FrameLayout.LayoutParams(width, height));
+        layout(view, width, height);
+        assertTrue("the view isn't shown, its animations wouldn't run", view.isShown());
+        return view;
+    }
+
+    /**
+     * Lays the view out at the given size, as a layout pass of its parent would.
+     */
+    static void layout(View view, int width, int height) {
+        view.getLayoutParams().width = width;
+        view.getLayoutParams().height = height;
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, width, height);
+    }
+
+    /**
+     * @return the radius the circle of the view must have for the progress, computed from scratch
+     */
+    static float expectedRadius(ProgressBarLayoutView view, long progress) {
+        int halfDiagonal = (int) Math.sqrt((double) view.getWidth() * view.getWidth() + view.getHeight() * view.getHeight()) / 2;
+        return ProgressEngine.getRadius(progress, view.getProgressDrawable().getMaxProgress(), BEGINNING_PROGRESS_SIZE, halfDiagonal);
+    }
+
+    /**
+     * @return true if the memory allocated by a thread can be measured on this JVM
+     */
+    static boolean canMeasureAllocations() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return false;
+        sThreadBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sThreadBean.isThreadAllocatedMemorySupported())
+            return false;
+        sThreadBean.setThreadAllocatedMemoryEnabled(true);
+        return true;
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, see {@link #canMeasureAllocations()}
+     */
+    static long allocatedBytes() {
+        return sThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,59 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+import org.junit.runners.model.InitializationError;
+import org.robolectric.DefaultTestLifecycle;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.TestLifecycle;
+
+import java.lang.reflect.Method;
+
+/**
+ * Robolectric runner for the progress views: every test runs with the animations on the fake clock
+ * of the {@link com.alterego.progressbarlayout.AnimationHarness}, so frames are only produced when
+ * the test advances it.
+ */
+public class ProgressBarLayoutTestRunner extends RobolectricTestRunner {
+
+    public ProgressBarLayoutTestRunner(Class<?> testClass) throws InitializationError {
+        super(testClass);
+    }
+
+    @Override
+    protected Class<? extends TestLifecycle> getTestLifecycleClass() {
+        return HarnessTestLifecycle.class;
+    }
+
+    /**
+     * Runs in the Robolectric class loader, so it installs the frame source of the ticker the test
+     * actually uses.
+     */
+    public static class HarnessTestLifecycle extends DefaultTestLifecycle {
+
+        @Override
+        public void beforeTest(Method method) {
+            super.beforeTest(method);
+            AnimationHarness.install();
+        }
+
+        @Override
+        public void afterTest(Method method) {
+            AnimationHarness.uninstall();
+            super.afterTest(method);
+        }
+    }
+}
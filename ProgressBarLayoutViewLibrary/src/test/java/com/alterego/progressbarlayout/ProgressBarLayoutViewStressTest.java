@@ -0,0 +1,102 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static com.alterego.progressbarlayout.AnimationHarness.BEGINNING_PROGRESS_SIZE;
+import static com.alterego.progressbarlayout.AnimationHarness.FRAME_INTERVAL_IN_MS;
+import static com.alterego.progressbarlayout.AnimationHarness.addView;
+import static com.alterego.progressbarlayout.AnimationHarness.createContainer;
+import static com.alterego.progressbarlayout.AnimationHarness.expectedRadius;
+import static com.alterego.progressbarlayout.AnimationHarness.frame;
+import static com.alterego.progressbarlayout.AnimationHarness.runUntilIdle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Many progress bars of different sizes, maximums and durations animating at the same time: each
+ * one must follow its own geometry and timing, whatever the others do.
+ */
+@RunWith(ProgressBarLayoutTestRunner.class)
+@Config(emulateSdk = 18)
+public class ProgressBarLayoutViewStressTest {
+
+    private static final int VIEW_COUNT = 24;
+
+    @Test
+    public void differentlySizedViewsAnimateTogether() {
+        FrameLayout container = createContainer();
+        ProgressBarLayoutView[] views = new ProgressBarLayoutView[VIEW_COUNT];
+        long[] targets = new long[VIEW_COUNT];
+        int[] expectedFrames = new int[VIEW_COUNT];
+        for (int i = 0; i < VIEW_COUNT; i++) {
+            views[i] = addView(container, 40 + i * 37, 30 + (VIEW_COUNT - i) * 23);
+            int maxProgress = 100 * (i + 1);
+            int duration = 200 + i * 50;
+            views[i].setMaxProgress(maxProgress);
+            views[i].setMaxAnimationDuration(duration);
+            targets[i] = maxProgress - i;
+            expectedFrames[i] = (int) Math.ceil((double) duration / FRAME_INTERVAL_IN_MS);
+        }
+        runUntilIdle();
+
+        int[] framesBefore = new int[VIEW_COUNT];
+        for (int i = 0; i < VIEW_COUNT; i++) {
+            framesBefore[i] = views[i].getAnimationFrameCount();
+            views[i].setProgress((int) targets[i]);
+        }
+
+        float[] radii = new float[VIEW_COUNT];
+        for (int i = 0; i < VIEW_COUNT; i++)
+            radii[i] = views[i].getProgressDrawable().getRadius();
+
+        int frame = 0;
+        while (frame()) {
+            frame++;
+            for (int i = 0; i < VIEW_COUNT; i++) {
+                ProgressBarLayoutDrawable drawable = views[i].getProgressDrawable();
+                float radius = drawable.getRadius();
+                String view = "view " + i + " at frame " + frame;
+
+                //each circle grows by its own steps, towards its own final radius
+                assertTrue(view + " shrank", radius >= radii[i]);
+                assertTrue(view + " overshot", radius <= expectedRadius(views[i], targets[i]));
+                assertTrue(view + " label overshot", drawable.getLabelProgress() <= targets[i]);
+                radii[i] = radius;
+
+                if (frame < expectedFrames[i]) {
+                    assertTrue(view + " finished early", drawable.getLabelProgress() < targets[i]);
+                } else {
+                    assertEquals(view, targets[i], drawable.getLabelProgress());
+                    assertEquals(view, expectedRadius(views[i], targets[i]), radius, 0);
+                }
+            }
+        }
+
+        assertEquals(expectedFrames[VIEW_COUNT - 1], frame);
+        for (int i = 0; i < VIEW_COUNT; i++) {
+            assertEquals(expectedFrames[i], views[i].getAnimationFrameCount() - framesBefore[i]);
+            assertTrue(views[i].getProgressDrawable().getRadius() > BEGINNING_PROGRESS_SIZE);
+        }
+        assertFalse(frame());
+    }
+}
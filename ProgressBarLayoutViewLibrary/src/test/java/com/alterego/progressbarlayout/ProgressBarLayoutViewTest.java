@@ -0,0 +1,178 @@
+package com.alterego.progressbarlayout;
+
+    /*Copyright 2014 Alter Ego SRLS
+
+        Licensed under the Apache License, Version 2.0 (the "License");
+        you may not use this file except in compliance with the License.
+        You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+        Unless required by applicable law or agreed to in writing, software
+        distributed under the License is distributed on an "AS IS" BASIS,
+        WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+        See the License for the specific language governing permissions and
+        limitations under the License.
+
+    */
+import android.widget.FrameLayout;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static com.alterego.progressbarlayout.AnimationHarness.FRAME_INTERVAL_IN_MS;
+import static com.alterego.progressbarlayout.AnimationHarness.addView;
+import static com.alterego.progressbarlayout.AnimationHarness.allocatedBytes;
+import static com.alterego.progressbarlayout.AnimationHarness.canMeasureAllocations;
+import static com.alterego.progressbarlayout.AnimationHarness.createContainer;
+import static com.alterego.progressbarlayout.AnimationHarness.expectedRadius;
+import static com.alterego.progressbarlayout.AnimationHarness.frame;
+import static com.alterego.progressbarlayout.AnimationHarness.layout;
+import static com.alterego.progressbarlayout.AnimationHarness.runUntilIdle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(ProgressBarLayoutTestRunner.class)
+@Config(emulateSdk = 18)
+public class ProgressBarLayoutViewTest {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+    private static final int STEP_DURATION_IN_MS = 10;
+    private static final int WARM_UP_FRAMES = 1000;
+    private static final int MEASURED_FRAMES = 10000;
+
+    private FrameLayout mContainer;
+    private ProgressBarLayoutView mView;
+    private ProgressBarLayoutDrawable mDrawable;
+
+    @Before
+    public void setUp() {
+        mContainer = createContainer();
+        mView = addView(mContainer, WIDTH, HEIGHT);
+        mDrawable = mView.getProgressDrawable();
+        runUntilIdle();
+    }
+
+    private static int framesFor(long distance) {
+        return (int) Math.ceil((double) distance * STEP_DURATION_IN_MS / FRAME_INTERVAL_IN_MS);
+    }
+
+    private void assertShows(long progress) {
+        assertEquals(progress, mDrawable.getLabelProgress());
+        assertEquals(expectedRadius(mView, progress), mDrawable.getRadius(), 0);
+        assertEquals("frame listeners left", 0, ProgressFrameTicker.getInstance().getFrameListenerCount());
+    }
+
+    @Test
+    public void setProgressAnimatesFrameByFrame() {
+        int framesBefore = mView.getAnimationFrameCount();
+        int invalidatesBefore = mView.getInvalidateCount();
+        int formatterCallsBefore = mDrawable.getFormatterCallCount();
+
+        mView.setProgress(50);
+        int frames = 0;
+        int labelChanges = 0;
+        long label = mDrawable.getLabelProgress();
+        while (frame()) {
+            frames++;
+            if (mDrawable.getLabelProgress() != label) {
+                label = mDrawable.getLabelProgress();
+                labelChanges++;
+            }
+        }
+
+        assertEquals(framesFor(50), frames);
+        assertEquals(frames, mView.getAnimationFrameCount() - framesBefore);
+        //the circle grows on every frame, and only its area is invalidated
+        assertEquals(frames, mView.getInvalidateCount() - invalidatesBefore);
+        //one label per value shown, however the frames fall
+        assertEquals(labelChanges, mDrawable.getFormatterCallCount() - formatterCallsBefore);
+        assertTrue(labelChanges <= frames);
+        assertShows(50);
+    }
+
+    @Test
+    public void resetStopsTheAnimation() {
+        mView.setProgress(100);
+        for (int i = 0; i < 10; i++)
+            assertTrue(frame());
+
+        mView.reset();
+        assertShows(0);
+        assertFalse(frame());
+
+        mView.setProgress(20);
+        assertEquals(framesFor(20), runUntilIdle());
+        assertShows(20);
+    }
+
+    @Test
+    public void resizeDuringAnimationKeepsTheRadiusInSync() {
+        mView.setProgress(100);
+        for (int i = 0; i < 20; i++)
+            assertTrue(frame());
+
+        layout(mView, WIDTH * 2, HEIGHT * 2);
+        assertTrue(runUntilIdle() > 0);
+        assertShows(100);
+
+        //a resize once the animation is over only moves the circle to the new size
+        layout(mView, WIDTH / 2, HEIGHT / 2);
+        assertEquals(expectedRadius(mView, 100), mDrawable.getRadius(), 0);
+        runUntilIdle();
+        assertShows(100);
+    }
+
+    @Test
+    public void retargetStormCostsAtMostOneUpdatePerFrame() {
+        int framesBefore = mView.getAnimationFrameCount();
+        int invalidatesBefore = mView.getInvalidateCount();
+        int formatterCallsBefore = mDrawable.getFormatterCallCount();
+
+        //10 new targets per frame, as a chatty producer would set them
+        int frames = 0;
+        int progress = 1;
+        while (progress <= 100) {
+            for (int i = 0; i < 10 && progress <= 100; i++)
+                mView.setProgress(progress++);
+            if (frame())
+                frames++;
+        }
+        frames += runUntilIdle();
+
+        assertEquals(frames, mView.getAnimationFrameCount() - framesBefore);
+        assertTrue(mView.getInvalidateCount() - invalidatesBefore <= frames);
+        assertTrue(mDrawable.getFormatterCallCount() - formatterCallsBefore <= frames);
+        assertShows(100);
+    }
+
+    @Test
+    public void allocationFreeFramesDontAllocate() {
+        Assume.assumeTrue(canMeasureAllocations());
+        mView.setAllocationFreeUpdates(true);
+        mView.setMaxAnimationDuration(200000);
+        mView.setProgress(1000000, 1000000);
+        int formatterCallsBefore = mDrawable.getFormatterCallCount();
+
+        for (int i = 0; i < WARM_UP_FRAMES; i++)
+            assertTrue(frame());
+
+        long before = allocatedBytes();
+        for (int i = 0; i < MEASURED_FRAMES; i++)
+            frame();
+        long allocated = allocatedBytes() - before;
+
+        assertTrue(mDrawable.getLabelUpdateCount() > MEASURED_FRAMES);
+        assertEquals("labels built through the formatter", 0, mDrawable.getFormatterCallCount() - formatterCallsBefore);
+        //the measurement itself can allocate a few bytes, a label per frame can't hide in them
+        assertEquals("bytes allocated per frame", 0, allocated / MEASURED_FRAMES);
+
+        runUntilIdle();
+        assertShows(1000000);
+    }
+}